@@ -0,0 +1,8 @@
+#!/bin/bash
+
+# Run the JMH benchmarks in src/test/java, e.g. the lexer throughput in MB/s.
+# Additional arguments are passed on to JMH, e.g. a benchmark name or -h for help.
+
+cd "$(dirname ${0})"
+mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath -Dmdep.includeScope=test || exit 1
+java -cp "target/test-classes:target/classes:$(cat target/test.classpath)" org.openjdk.jmh.Main "$@"
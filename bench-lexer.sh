@@ -0,0 +1,10 @@
+#!/bin/bash
+
+# Lex a generated script (default 500 MB) from a String, a reader and a memory-mapped file, each in its own JVM,
+# and print the number of tokens, the elapsed time in seconds and the peak heap usage.
+# Usage: ./bench-lexer.sh [size in MB]
+
+cd "$(dirname ${0})"
+for mode in string reader mapped; do
+    java -Xmx4g -cp target/classes:target/test-classes at.lagerfeuer.lox.LexerBenchmark ${mode} "$@"
+done
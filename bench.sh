@@ -0,0 +1,9 @@
+#!/bin/bash
+
+# Run every script in bench/ and print its result and elapsed time in seconds.
+# Additional arguments are passed on to jlox.
+
+for script in "$(dirname ${0})"/bench/*.lox; do
+    echo "== $(basename ${script})"
+    "$(dirname ${0})/jlox.sh" "$@" "${script}"
+done
@@ -21,8 +21,10 @@ def defineAst(String outputDir, String baseName, List<String> types) {
     for (String type : types) {
         String[] parts = type.split(":")
         String className = parts[0].trim()
-        String fields = parts[1].trim()
-        defineType(writer, baseName, className, fields)
+        String[] fieldParts = parts[1].split("\\|")
+        String fields = fieldParts[0].trim()
+        String resolved = (fieldParts.length > 1) ? fieldParts[1].trim() : null
+        defineType(writer, baseName, className, fields, resolved)
     }
 
     // base accept() method
@@ -45,7 +47,7 @@ def defineVisitor(
 }
 
 def defineType(
-        PrintWriter writer, String baseName, String className, String fieldList) {
+        PrintWriter writer, String baseName, String className, String fieldList, String resolvedList) {
     writer.println(String.format("  public static class %s extends %s {", className, baseName))
     // Constructor
     writer.println(String.format("    public %s (%s) {", className, fieldList))
@@ -69,12 +71,22 @@ def defineType(
         writer.println(String.format("    public final %s;", field))
     }
 
+    // Mutable fields filled in by the ResolverPass
+    if (resolvedList != null) {
+        writer.println()
+        writer.println("    // Set by ResolverPass and the interpreter")
+        for (String field : resolvedList.split(", ")) {
+            writer.println(String.format("    public %s;", field))
+        }
+    }
+
     writer.println("  }")
     writer.println()
 }
 
 
 // Main
+// Type format: "Name : <final constructor fields> [| <mutable fields set by the ResolverPass>]"
 def outputDir = new File("src/main/java/at/lagerfeuer/lox/ast/")
 if (!outputDir.exists())
     outputDir.mkdirs()
@@ -82,34 +94,34 @@ def out = outputDir.toString()
 
 // Expression
 List<String> expr = Arrays.asList(
-        "Assign : Token name, Expr value",
-        "Binary : Expr left, Token operator, Expr right",
+        "Assign : Token name, Expr value | int depth = -1, int slot = -1, int global = -1, int envDepth = -1, int envSlot = -1, boolean boxed = false",
+        "Binary : Expr left, Token operator, Expr right | boolean numeric = false",
         "Grouping : Expr expr",
         "Call : Expr callee, Token paren, List<Expr> arguments",
         "Comma : List<Expr> exprs",
-        "Get : Expr object, Token name",
-        "Lambda : Token token, List<Token> parameters, List<Stmt> body",
+        "Get : Expr object, Token name | InlineCache cache = new InlineCache()",
+        "Lambda : Token token, List<Token> parameters, List<Stmt> body | Stmt.Function function = null, int slots = 0, int frameSlots = 0, int[] captureDepths = null, int[] captureSlots = null, int[] boxedParameters = null",
         "Literal : Object value",
         "Logical : Expr left, Token operator, Expr right",
-        "Set : Expr object, Token name, Expr value",
-        "Super : Token keyword, Token method",
+        "Set : Expr object, Token name, Expr value | InlineCache cache = new InlineCache()",
+        "Super : Token keyword, Token method | int depth = -1, int envDepth = -1, int envSlot = -1, int thisDepth = -1, int thisSlot = -1",
         "Ternary : Expr condition, Expr thenBranch, Expr elseBranch",
-        "This : Token keyword",
+        "This : Token keyword | int depth = -1, int envDepth = -1, int envSlot = -1",
         "Unary : Token operator, Expr right",
-        "Variable : Token name"
+        "Variable : Token name | Stmt.Var declaration = null, int depth = -1, int slot = -1, int global = -1, int envDepth = -1, int envSlot = -1, boolean boxed = false"
 )
 defineAst(out, "Expr", expr)
 
 // Statement
 List<String> stmt = Arrays.asList(
         "Break : Token token",
-        "Block : List<Stmt> stmts",
-        "Class : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+        "Block : List<Stmt> stmts | int slots = 0, boolean hoisted = false",
+        "Class : Token name, Expr.Variable superclass, List<Stmt.Function> methods | int slot = -1, int envSlot = -1, boolean boxed = false, int[] captureDepths = null, int[] captureSlots = null",
         "Expression : Expr expr",
-        "Function : Token name, List<Token> parameters, List<Stmt> body, List<Qualifier> qualifiers",
+        "Function : Token name, List<Token> parameters, List<Stmt> body, List<Qualifier> qualifiers | Object profile = null, int slot = -1, int slots = 0, int envSlot = -1, int frameSlots = 0, int thisSlot = -1, boolean boxed = false, int[] captureDepths = null, int[] captureSlots = null, int[] boxedParameters = null",
         "If : Expr condition, Stmt thenBranch, Stmt elseBranch",
-        "Return : Token keyword, Expr expr",
-        "Var : Token name, Expr initializer",
+        "Return : Token keyword, Expr expr | boolean tailCall = false",
+        "Var : Token name, Expr initializer | int slot = -1, int envSlot = -1, boolean boxed = false, boolean reassigned = false",
         "While : Expr condition, Stmt body"
 )
 defineAst(out, "Stmt", stmt)
@@ -0,0 +1,21 @@
+package at.lagerfeuer.lox;
+
+/**
+ * Shared storage of a local variable that is captured by a closure and assigned after it was captured.
+ * <p>
+ * Closures copy the variables they capture. The copies of a variable that changes would go stale, so the
+ * {@link ResolverPass} marks such a variable as boxed: its slot holds a box and every closure copies the box instead
+ * of the value.
+ */
+public final class Box {
+    public Object value;
+
+    public Box(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return Interpreter.stringify(value);
+    }
+}
@@ -1,7 +0,0 @@
-package at.lagerfeuer.lox;
-
-public class Break extends RuntimeException {
-    Break() {
-        super(null, null, false, false);
-    }
-}
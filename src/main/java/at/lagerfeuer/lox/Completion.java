@@ -0,0 +1,17 @@
+package at.lagerfeuer.lox;
+
+/**
+ * How a statement completed, returned by the statement visitors of the {@link Interpreter}.
+ * <p>
+ * `break` and `return` are propagated as plain return values instead of exceptions, every statement that contains
+ * other statements passes anything but {@link #NORMAL} on to its caller.
+ */
+enum Completion {
+    NORMAL,
+    // leave the innermost loop
+    BREAK,
+    // leave the function, the value is in Interpreter.returnValue
+    RETURN,
+    // leave the function and call another one in its place, see Interpreter.tailCall
+    TAIL_CALL
+}
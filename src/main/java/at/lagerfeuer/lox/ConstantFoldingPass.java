@@ -0,0 +1,363 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Evaluates constant expressions ahead of time, runs after the {@link ResolverPass}.
+ * <p>
+ * Operators with literal operands become literals, local variables declared with a literal and never assigned again
+ * are replaced by their value and branches that can never run are removed. An expression that would fail with a
+ * {@link RuntimeError} is left alone, so the error still happens at runtime.
+ * <p>
+ * Nodes with a folded child are copied, including what the resolver stored in them. Lists of statements and arguments
+ * are updated in place.
+ */
+public class ConstantFoldingPass implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // result of an operator that fails at runtime
+    private static final Object FAILS = new Object();
+    // value of local variables that never change
+    private final Map<Stmt.Var, Object> constants = new HashMap<>();
+
+    void fold(List<Stmt> stmts) {
+        ListIterator<Stmt> iterator = stmts.listIterator();
+        while (iterator.hasNext()) {
+            Stmt stmt = fold(iterator.next());
+            if (stmt == null)
+                iterator.remove();
+            else
+                iterator.set(stmt);
+        }
+    }
+
+    /**
+     * @return the folded statement, null if it has no effect
+     */
+    private Stmt fold(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    /**
+     * Fold a statement that cannot be removed, like the body of a loop.
+     */
+    private Stmt foldNested(Stmt stmt) {
+        Stmt folded = fold(stmt);
+        return (folded != null) ? folded : empty();
+    }
+
+    private Expr fold(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private static Stmt.Block empty() {
+        Stmt.Block block = new Stmt.Block(new ArrayList<>());
+        block.hoisted = true;
+        return block;
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object value(Expr literal) {
+        return ((Expr.Literal) literal).value;
+    }
+
+    /**
+     * @return the folded literal, `expr` if the operator fails at runtime
+     */
+    private static Expr literal(Expr expr, Object value) {
+        return (value != FAILS) ? new Expr.Literal(value) : expr;
+    }
+
+    /**
+     * Apply a binary operator to two values, with the semantics of the interpreter.
+     *
+     * @return the result, {@link #FAILS} if the interpreter throws a {@link RuntimeError}
+     */
+    private static Object binary(TokenType operator, Object left, Object right) {
+        boolean numbers = left instanceof Double && right instanceof Double;
+        boolean strings = left instanceof String && right instanceof String;
+        switch (operator) {
+            case PLUS:
+                if (numbers)
+                    return Interpreter.box((double) left + (double) right);
+                if (left instanceof String || right instanceof String)
+                    return Interpreter.stringify(left) + Interpreter.stringify(right);
+                return FAILS;
+            case MINUS:
+                return numbers ? Interpreter.box((double) left - (double) right) : FAILS;
+            case STAR:
+                return numbers ? Interpreter.box((double) left * (double) right) : FAILS;
+            case SLASH:
+                return (numbers && (double) right != 0) ? Interpreter.box((double) left / (double) right) : FAILS;
+            case GREATER:
+                return numbers ? (double) left > (double) right
+                        : strings ? ((String) left).compareTo((String) right) > 0 : FAILS;
+            case GREATER_EQUAL:
+                return numbers ? (double) left >= (double) right
+                        : strings ? ((String) left).compareTo((String) right) >= 0 : FAILS;
+            case LESS:
+                return numbers ? (double) left < (double) right
+                        : strings ? ((String) left).compareTo((String) right) < 0 : FAILS;
+            case LESS_EQUAL:
+                return numbers ? (double) left <= (double) right
+                        : strings ? ((String) left).compareTo((String) right) <= 0 : FAILS;
+            case EQUAL_EQUAL:
+                return Objects.equals(left, right);
+            case BANG_EQUAL:
+                return !Objects.equals(left, right);
+            default:
+                return FAILS;
+        }
+    }
+
+    /**
+     * Apply a unary operator to a value, see {@link #binary(TokenType, Object, Object)}.
+     */
+    private static Object unary(TokenType operator, Object right) {
+        switch (operator) {
+            case MINUS:
+                return (right instanceof Double) ? Interpreter.box(-(double) right) : FAILS;
+            case BANG:
+                return !Interpreter.isTruthy(right);
+            default:
+                return FAILS;
+        }
+    }
+
+    // expressions ------------------------------------------------------------
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = fold(expr.value);
+        if (value == expr.value)
+            return expr;
+        Expr.Assign folded = new Expr.Assign(expr.name, value);
+        folded.depth = expr.depth;
+        folded.slot = expr.slot;
+        folded.global = expr.global;
+        folded.envDepth = expr.envDepth;
+        folded.envSlot = expr.envSlot;
+        folded.boxed = expr.boxed;
+        return folded;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = fold(expr.left);
+        Expr right = fold(expr.right);
+        Expr.Binary folded = expr;
+        if (left != expr.left || right != expr.right) {
+            folded = new Expr.Binary(left, expr.operator, right);
+            folded.numeric = expr.numeric || (expr.operator.type == TokenType.PLUS
+                    && ResolverPass.isNumeric(left) && ResolverPass.isNumeric(right));
+        }
+        if (isLiteral(left) && isLiteral(right))
+            return literal(folded, binary(expr.operator.type, value(left), value(right)));
+        return folded;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        // NOTE the parser already applied the grouping
+        return fold(expr.expr);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        expr.arguments.replaceAll(this::fold);
+        Expr callee = fold(expr.callee);
+        if (callee == expr.callee)
+            return expr;
+        return new Expr.Call(callee, expr.paren, expr.arguments);
+    }
+
+    @Override
+    public Expr visitCommaExpr(Expr.Comma expr) {
+        expr.exprs.replaceAll(this::fold);
+        // only the last value is used, literals before it have no effect
+        int last = expr.exprs.size() - 1;
+        for (int i = last - 1; i >= 0; i--) {
+            if (isLiteral(expr.exprs.get(i)))
+                expr.exprs.remove(i);
+        }
+        return (expr.exprs.size() == 1) ? expr.exprs.get(0) : expr;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = fold(expr.object);
+        if (object == expr.object)
+            return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitLambdaExpr(Expr.Lambda expr) {
+        // NOTE the declaration of the lambda shares the body
+        fold(expr.body);
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = fold(expr.left);
+        Expr right = fold(expr.right);
+        if (isLiteral(left)) {
+            boolean truthy = Interpreter.isTruthy(value(left));
+            if (expr.operator.type == TokenType.OR)
+                return truthy ? left : right;
+            return truthy ? right : left;
+        }
+        if (left == expr.left && right == expr.right)
+            return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = fold(expr.object);
+        Expr value = fold(expr.value);
+        if (object == expr.object && value == expr.value)
+            return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr condition = fold(expr.condition);
+        Expr thenBranch = fold(expr.thenBranch);
+        Expr elseBranch = fold(expr.elseBranch);
+        if (isLiteral(condition))
+            return Interpreter.isTruthy(value(condition)) ? thenBranch : elseBranch;
+        if (condition == expr.condition && thenBranch == expr.thenBranch && elseBranch == expr.elseBranch)
+            return expr;
+        return new Expr.Ternary(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = fold(expr.right);
+        Expr.Unary folded = (right == expr.right) ? expr : new Expr.Unary(expr.operator, right);
+        if (isLiteral(right))
+            return literal(folded, unary(expr.operator.type, value(right)));
+        return folded;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        if (expr.declaration != null && constants.containsKey(expr.declaration))
+            return new Expr.Literal(constants.get(expr.declaration));
+        return expr;
+    }
+
+    // statements -------------------------------------------------------------
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        fold(stmt.stmts);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        // NOTE the superclass is a variable, it must not become a literal
+        for (Stmt.Function method : stmt.methods)
+            fold(method.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        // NOTE kept even if it is a literal now, the REPL prints the value of a single expression
+        Expr expr = fold(stmt.expr);
+        return (expr == stmt.expr) ? stmt : new Stmt.Expression(expr);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        fold(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = fold(stmt.condition);
+        if (isLiteral(condition)) {
+            Stmt branch = Interpreter.isTruthy(value(condition)) ? stmt.thenBranch : stmt.elseBranch;
+            return (branch != null) ? fold(branch) : null;
+        }
+        Stmt thenBranch = foldNested(stmt.thenBranch);
+        Stmt elseBranch = (stmt.elseBranch != null) ? fold(stmt.elseBranch) : null;
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)
+            return stmt;
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.expr == null)
+            return stmt;
+        Expr expr = fold(stmt.expr);
+        if (expr == stmt.expr)
+            return stmt;
+        Stmt.Return folded = new Stmt.Return(stmt.keyword, expr);
+        folded.tailCall = stmt.tailCall && expr instanceof Expr.Call;
+        return folded;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = (stmt.initializer != null) ? fold(stmt.initializer) : null;
+        // NOTE globals can be assigned by code resolved later, only locals are known
+        if (stmt.slot >= 0 && !stmt.reassigned && (initializer == null || isLiteral(initializer)))
+            constants.put(stmt, (initializer != null) ? value(initializer) : null);
+        if (initializer == stmt.initializer)
+            return stmt;
+        Stmt.Var folded = new Stmt.Var(stmt.name, initializer);
+        folded.slot = stmt.slot;
+        folded.envSlot = stmt.envSlot;
+        folded.boxed = stmt.boxed;
+        folded.reassigned = stmt.reassigned;
+        return folded;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = fold(stmt.condition);
+        if (isLiteral(condition) && !Interpreter.isTruthy(value(condition)))
+            return null;
+        Stmt body = foldNested(stmt.body);
+        if (condition == stmt.condition && body == stmt.body)
+            return stmt;
+        return new Stmt.While(condition, body);
+    }
+}
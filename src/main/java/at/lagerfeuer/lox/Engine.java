@@ -0,0 +1,28 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.List;
+
+/**
+ * Executes resolved programs.
+ * An engine keeps its global state between calls, so a REPL can use one engine for all lines.
+ */
+public interface Engine {
+    /**
+     * Interpret a program.
+     * Runtime errors are reported through {@link Lox#runtimeError(RuntimeError)}.
+     *
+     * @param stmts List of statements, parsed from the source code and resolved.
+     */
+    void interpret(List<Stmt> stmts);
+
+    /**
+     * Evaluate a single expression, used by the REPL and for testing purposes.
+     *
+     * @param expr expression to interpret
+     * @return result of the evaluation as Object, null if a runtime error occurred.
+     */
+    Object interpret(Expr expr);
+}
@@ -1,45 +1,27 @@
 package at.lagerfeuer.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * A local scope at runtime.
+ * Variables are stored in a fixed-size array, the slot of each variable is assigned by the {@link ResolverPass}.
+ * Global variables live in {@link Globals}.
+ */
 public class Environment {
-    private final Map<String, Object> values = new HashMap<>();
+    private final Object[] slots;
     final Environment enclosing;
 
-    public Environment() {
-        enclosing = null;
-    }
-
-    public Environment(Environment enclosing) {
+    public Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.slots = new Object[size];
     }
 
-    void define(String name, Object value) {
-        // TODO overwriting an existing value with 'define' should throw a RuntimeError
-        // TODO save tokens so we can reference them "Variable <name> already defined here: file.lox:123"
-        values.put(name, value);
-    }
-
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme))
-            values.put(name.lexeme, value);
-        else if (enclosing != null)
-            enclosing.assign(name, value);
-        else
-            throw new RuntimeError(name,
-                    String.format("Undefined variable '%s'.", name.lexeme));
+    void define(int slot, Object value) {
+        slots[slot] = value;
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
-
-        if (enclosing != null)
-            return enclosing.get(name);
-
-        throw new RuntimeError(name,
-                String.format("Undefined variable '%s'.", name.lexeme));
+    Object get(int slot) {
+        return slots[slot];
     }
 
     Environment ancestor(int distance) {
@@ -51,12 +33,12 @@ public class Environment {
         return env;
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    public Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
     @Override
@@ -64,10 +46,7 @@ public class Environment {
         StringBuilder builder = new StringBuilder();
         if (enclosing != null)
             builder.append(enclosing.toString());
-        for (String key : values.keySet()) {
-            String value = values.get(key) != null ? values.get(key).toString() : "null";
-            builder.append(String.format("%s:\t%s\n", key, value));
-        }
+        builder.append(Arrays.toString(slots)).append('\n');
         return builder.toString();
     }
 }
@@ -0,0 +1,98 @@
+package at.lagerfeuer.lox;
+
+import java.util.Arrays;
+
+/**
+ * Global variables, stored in an array indexed by the name of the variable.
+ * <p>
+ * The {@link ResolverPass} assigns an index to every global name it sees and stores it in the {@link Symbol} of the
+ * name, the indices are shared by all interpreters. Like symbols they are never released, so there are at most as many
+ * indices as distinct global names have been resolved, and the array of an interpreter never grows beyond that.
+ * A global may be defined after the code referencing it has been resolved, until then its slot holds
+ * {@link #UNDEFINED}.
+ */
+public class Globals {
+    private static final Object UNDEFINED = new Object();
+
+    private static int count = 0;
+
+    private Object[] values = new Object[0];
+    // name of each defined value, for display
+    private Symbol[] symbols = new Symbol[0];
+
+    /**
+     * @return index of the global variable `name`, assigned on first use
+     */
+    public static synchronized int indexOf(Symbol name) {
+        if (name.global < 0)
+            name.global = count++;
+        return name.global;
+    }
+
+    /**
+     * @return number of indices assigned so far
+     */
+    static synchronized int count() {
+        return count;
+    }
+
+    void define(Symbol name, Object value) {
+        // TODO overwriting an existing value with 'define' should throw a RuntimeError
+        // TODO save tokens so we can reference them "Variable <name> already defined here: file.lox:123"
+        int index = indexOf(name);
+        if (index >= values.length) {
+            int length = values.length;
+            values = Arrays.copyOf(values, Math.max(index + 1, 2 * length));
+            Arrays.fill(values, length, values.length, UNDEFINED);
+            symbols = Arrays.copyOf(symbols, values.length);
+        }
+        values[index] = value;
+        symbols[index] = name;
+    }
+
+    /**
+     * @param index index of `name`
+     */
+    public void assign(int index, Token name, Object value) {
+        if (index >= values.length || values[index] == UNDEFINED)
+            throw undefined(name);
+        values[index] = value;
+    }
+
+    public void assign(Token name, Object value) {
+        assign(indexOf(name.symbol), name, value);
+    }
+
+    /**
+     * @param index index of `name`
+     */
+    public Object get(int index, Token name) {
+        if (index < values.length) {
+            Object value = values[index];
+            if (value != UNDEFINED)
+                return value;
+        }
+        throw undefined(name);
+    }
+
+    public Object get(Token name) {
+        return get(indexOf(name.symbol), name);
+    }
+
+    private static RuntimeError undefined(Token name) {
+        return new RuntimeError(name,
+                String.format("Undefined variable '%s'.", name.lexeme));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == UNDEFINED)
+                continue;
+            String value = values[i] != null ? values[i].toString() : "null";
+            builder.append(String.format("%s:\t%s\n", symbols[i].name, value));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package at.lagerfeuer.lox;
+
+/**
+ * Cache of a property access site, keyed on the {@link Shape} of the receiver.
+ * <p>
+ * For a get the cache remembers the slot of the field or, if the shape has no such field, the method the property
+ * resolves to. For a set it remembers the slot and the shape the instance has after the assignment. Most sites only
+ * ever see one shape, some see a few. The first {@link #SIZE} shapes are remembered, further shapes always take the
+ * full lookup.
+ */
+public final class InlineCache {
+    private static final int SIZE = 4;
+
+    private final Shape[] shapes = new Shape[SIZE];
+    // field slot, -1 for a method
+    private final int[] slots = new int[SIZE];
+    private final LoxFunction[] methods = new LoxFunction[SIZE];
+    // shape after a set
+    private final Shape[] targets = new Shape[SIZE];
+    private int count = 0;
+
+    Object get(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                int slot = slots[i];
+                return (slot >= 0) ? instance.values[slot] : instance.bindMethod(name, methods[i]);
+            }
+        }
+
+        // NOTE fields shadow methods
+        int slot = shape.slot(name.symbol);
+        if (slot >= 0) {
+            add(shape, slot, null, null);
+            return instance.values[slot];
+        }
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        // NOTE misses are not cached, they end in a RuntimeError anyway
+        if (method != null)
+            add(shape, -1, method, null);
+        return instance.bindMethod(name, method);
+    }
+
+    /**
+     * Like {@link #get}, but a method is returned without binding it to the instance.
+     *
+     * @return null if the property is a field or does not exist
+     */
+    LoxFunction method(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape)
+                return methods[i];
+        }
+
+        int slot = shape.slot(name.symbol);
+        if (slot >= 0) {
+            add(shape, slot, null, null);
+            return null;
+        }
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        if (method != null)
+            add(shape, -1, method, null);
+        return method;
+    }
+
+    void set(LoxInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                instance.store(targets[i], slots[i], value);
+                return;
+            }
+        }
+
+        Shape target = shape.with(name.symbol);
+        int slot = target.slot(name.symbol);
+        add(shape, slot, null, target);
+        instance.store(target, slot, value);
+    }
+
+    private void add(Shape shape, int slot, LoxFunction method, Shape target) {
+        if (count == SIZE)
+            return;
+        shapes[count] = shape;
+        slots[count] = slot;
+        methods[count] = method;
+        targets[count] = target;
+        count++;
+    }
+}
@@ -2,23 +2,57 @@ package at.lagerfeuer.lox;
 
 import at.lagerfeuer.lox.ast.Expr;
 import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.jit.Jit;
 
 import java.util.*;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    public final Environment globals = new Environment();
-    private Environment env = globals;
-    private Map<Expr, Integer> locals = new HashMap<>();
+public class Interpreter implements Engine, Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+    public final Globals globals = new Globals();
+    // compiles hot functions, see LoxFunction
+    final Jit jit;
+    // boxes of the integers in [SMALL_MIN, SMALL_MAX], see box()
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 1023;
+    private static final Double[] SMALL = new Double[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        for (int i = 0; i < SMALL.length; i++)
+            SMALL[i] = (double) (i + SMALL_MIN);
+    }
+
+    // NOTE null while executing top-level code, globals are not part of the environment chain
+    private Environment env = null;
+    // value of the last `return`, see Completion.RETURN
+    private Object returnValue = null;
+    // pending tail call, see tailCall()
+    LoxFunction tailFunction = null;
+    LoxInstance tailReceiver = null;
+    Object[] tailArguments = null;
+
+    /**
+     * Result of a function that ends in a tail call, see {@link #tailCall(LoxCallable, LoxInstance, Object[])}.
+     */
+    public static final Object TAIL_CALL = new Object();
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        this(new Jit(Jit.DEFAULT_THRESHOLD));
+    }
+
+    Interpreter(Jit jit) {
+        this.jit = jit;
+        globals.define(Symbol.intern("clock"), new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -28,15 +62,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         });
 
-        globals.define("print", new LoxCallable() {
+        globals.define(Symbol.intern("print"), new LoxCallable() {
             @Override
             public int arity() {
                 return 1;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                System.out.println(stringify(arguments.get(0)));
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return call1(interpreter, arguments[0]);
+            }
+
+            @Override
+            public Object call1(Interpreter interpreter, Object a) {
+                System.out.println(stringify(a));
                 return null;
             }
 
@@ -47,11 +86,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         });
     }
 
-    /**
-     * Interpret a program.
-     *
-     * @param stmts List of statements, parsed from the source code.
-     */
+    @Override
     public void interpret(List<Stmt> stmts) {
         try {
             for (Stmt stmt : stmts)
@@ -61,12 +96,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    /**
-     * For testing purposes.
-     *
-     * @param expr expression to interpret
-     * @return result of the evaluation as Object.
-     */
+    @Override
     public Object interpret(Expr expr) {
         try {
             return evaluate(expr);
@@ -75,19 +105,55 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    public void executeBlock(List<Stmt> stmts, Environment env) {
+    /**
+     * @return {@link Completion#NORMAL} or how the statement that ended the block early completed
+     */
+    Completion executeBlock(List<Stmt> stmts, Environment env) {
         Environment previous = this.env;
         try {
             this.env = env;
-            for (Stmt stmt : stmts)
-                execute(stmt);
+            return execute(stmts);
         } finally {
             this.env = previous;
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            Completion completion = execute(stmt);
+            if (completion != Completion.NORMAL)
+                return completion;
+        }
+        return Completion.NORMAL;
+    }
+
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    /**
+     * Leave the current function and call `callee` in its place. A Lox function is not called here, the call is left
+     * pending for the caller of the current function ({@link LoxFunction}) so the stack does not grow.
+     *
+     * @param receiver instance `callee` is a method of, null for plain calls
+     * @return {@link #TAIL_CALL} or the result of a native function or class
+     */
+    public Object tailCall(LoxCallable callee, LoxInstance receiver, Object[] arguments) {
+        if (!(callee instanceof LoxFunction))
+            return callee.call(this, arguments);
+        tailFunction = (LoxFunction) callee;
+        tailReceiver = receiver;
+        tailArguments = arguments;
+        return TAIL_CALL;
+    }
+
+    /**
+     * Take the value of the `return` that completed the function body.
+     */
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
     }
 
     private Object evaluate(Expr expr) {
@@ -96,16 +162,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    /**
+     * Define a variable in the current scope.
+     *
+     * @param slot slot assigned by the {@link ResolverPass}, -1 for globals
+     */
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0)
+            globals.define(name.symbol, value);
+        else
+            env.define(slot, value);
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            return env.getAt(distance, name.lexeme);
-        else
-            return globals.get(name);
+    /**
+     * Copy the variables captured by a function or class into its closure.
+     *
+     * @return null if nothing is captured
+     */
+    private Environment capture(int[] depths, int[] slots) {
+        if (depths.length == 0)
+            return null;
+        Environment closure = new Environment(null, depths.length);
+        for (int i = 0; i < depths.length; i++)
+            closure.define(i, env.getAt(depths[i], slots[i]));
+        return closure;
     }
 
     public static String stringify(Object object) {
@@ -126,7 +206,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return stringify(object);
     }
 
-    private boolean isTruthy(Object obj) {
+    /**
+     * Box a number, small integral values share a cached box instead of allocating a new Double.
+     */
+    public static Object box(double value) {
+        int i = (int) value;
+        // NOTE -0.0 does not equal 0.0 (Double.equals) and prints differently, it must not share the box of 0
+        if (i == value && i >= SMALL_MIN && i <= SMALL_MAX && (i != 0 || Double.doubleToRawLongBits(value) == 0L))
+            return SMALL[i - SMALL_MIN];
+        return value;
+    }
+
+    public static boolean isTruthy(Object obj) {
         if (obj == null)
             return false;
         if (obj instanceof Boolean)
@@ -140,22 +231,6 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return true;
     }
 
-    private boolean typeCheck(TokenType type, Object... objects) {
-        Class<?> cls = null;
-        switch (type) {
-            case NUMBER:
-                cls = Double.class;
-                break;
-            case STRING:
-                cls = String.class;
-                break;
-            default:
-                // unreachable
-                return false;
-        }
-        return Arrays.stream(objects).allMatch(cls::isInstance);
-    }
-
     private void checkNumberOperand(Token operator, Object operand) throws RuntimeError {
         if (operand instanceof Double)
             return;
@@ -169,56 +244,120 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private TokenType types(Object left, Object right)
+    private TokenType types(Token operator, Object left, Object right)
             throws RuntimeError {
         if (left instanceof Double && right instanceof Double)
             return TokenType.NUMBER;
         if (left instanceof String && right instanceof String)
             return TokenType.STRING;
-        return null;
+        throw new RuntimeError(operator, "Operands must be numbers or strings.");
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            env.assignAt(distance, expr.name, value);
+        if (expr.depth < 0)
+            globals.assign(expr.global, expr.name, value);
+        else if (expr.boxed)
+            ((Box) env.getAt(expr.envDepth, expr.envSlot)).value = value;
         else
-            globals.assign(expr.name, value);
+            env.assignAt(expr.envDepth, expr.envSlot, value);
 
         return value;
     }
 
+    /**
+     * Evaluate an expression the {@link ResolverPass} proved numeric, without boxing intermediate results.
+     */
+    private double evaluateDouble(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return (double) ((Expr.Literal) expr).value;
+        if (expr instanceof Expr.Grouping)
+            return evaluateDouble(((Expr.Grouping) expr).expr);
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (ResolverPass.isNumeric(unary.right))
+                return -evaluateDouble(unary.right);
+            Object right = evaluate(unary.right);
+            checkNumberOperand(unary.operator, right);
+            return -(double) right;
+        }
+        return arithmetic((Expr.Binary) expr);
+    }
+
+    /**
+     * Evaluate `+` on two numbers, `-`, `*` or `/`.
+     */
+    private double arithmetic(Expr.Binary expr) {
+        // NOTE both operands are evaluated before their types are checked
+        boolean numbers = true;
+        double left = 0;
+        if (ResolverPass.isNumeric(expr.left)) {
+            left = evaluateDouble(expr.left);
+        } else {
+            Object value = evaluate(expr.left);
+            if (value instanceof Double)
+                left = (double) value;
+            else
+                numbers = false;
+        }
+        double right = 0;
+        if (ResolverPass.isNumeric(expr.right)) {
+            right = evaluateDouble(expr.right);
+        } else {
+            Object value = evaluate(expr.right);
+            if (value instanceof Double)
+                right = (double) value;
+            else
+                numbers = false;
+        }
+        if (!numbers)
+            throw new RuntimeError(expr.operator, "Operands must be numbers.");
+
+        switch (expr.operator.type) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            default:
+                if (right == 0)
+                    throw new RuntimeError(expr.operator, "Division by 0");
+                return left / right;
+        }
+    }
+
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.numeric)
+            return box(arithmetic(expr));
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
             case PLUS:
-                if (typeCheck(TokenType.NUMBER, left, right))
-                    return (double) left + (double) right;
-//                if (typeCheck(TokenType.STRING, left, right))
-//                    return str(left) + str(right);
+                if (left instanceof Double && right instanceof Double)
+                    return box((double) left + (double) right);
                 if (left instanceof String || right instanceof String)
                     return str(left) + str(right);
                 throw new RuntimeError(expr.operator,
                         "Expecting operands to be numbers or strings.");
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
+                return box((double) left - (double) right);
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+                return box((double) left * (double) right);
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
                 if ((double) right == 0)
                     throw new RuntimeError(expr.operator, "Division by 0");
-                return (double) left / (double) right;
+                return box((double) left / (double) right);
             case GREATER:
-                switch (types(left, right)) {
+                switch (types(expr.operator, left, right)) {
                     case NUMBER:
                         return (double) left > (double) right;
                     case STRING:
@@ -228,7 +367,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                                 "Operands must be numbers or strings.");
                 }
             case GREATER_EQUAL:
-                switch (types(left, right)) {
+                switch (types(expr.operator, left, right)) {
                     case NUMBER:
                         return (double) left >= (double) right;
                     case STRING:
@@ -238,7 +377,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                                 "Operands must be numbers or strings.");
                 }
             case LESS:
-                switch (types(left, right)) {
+                switch (types(expr.operator, left, right)) {
                     case NUMBER:
                         return (double) left < (double) right;
                     case STRING:
@@ -248,7 +387,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                                 "Operands must be numbers or strings.");
                 }
             case LESS_EQUAL:
-                switch (types(left, right)) {
+                switch (types(expr.operator, left, right)) {
                     case NUMBER:
                         return (double) left <= (double) right;
                     case STRING:
@@ -279,12 +418,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
+        if (expr.operator.type == TokenType.MINUS)
+            return box(evaluateDouble(expr));
 
+        Object right = evaluate(expr.right);
         switch (expr.operator.type) {
-            case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -((double) right);
             case BANG:
                 return !isTruthy(right);
         }
@@ -295,7 +433,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        if (expr.depth < 0)
+            return globals.get(expr.global, expr.name);
+        Object value = env.getAt(expr.envDepth, expr.envSlot);
+        return expr.boxed ? ((Box) value).value : value;
     }
 
     @Override
@@ -308,7 +449,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return env.getAt(expr.envDepth, expr.envSlot);
     }
 
     @Override
@@ -339,24 +480,127 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        try {
+            if (expr.callee instanceof Expr.Get)
+                return invoke(expr, (Expr.Get) expr.callee);
+            return call(evaluate(expr.callee), expr);
+        } catch (StackOverflowError error) {
+            // NOTE Lox calls nest Java calls, report the innermost call instead of crashing; use the 'vm' engine
+            // for deeper recursion
+            throw new RuntimeError(expr.paren, "Stack overflow.");
+        }
+    }
+
+    private Object call(Object callee, Expr.Call expr) {
+        // NOTE all arguments are evaluated before the callee is checked
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                return callable(callee, 0, expr.paren).call0(this);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                return callable(callee, 1, expr.paren).call1(this, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return callable(callee, 2, expr.paren).call2(this, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return callable(callee, 3, expr.paren).call3(this, a, b, c);
+            }
+            case 4: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                Object d = evaluate(arguments.get(3));
+                return callable(callee, 4, expr.paren).call4(this, a, b, c, d);
+            }
+            default: {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = evaluate(arguments.get(i));
+                return callable(callee, values.length, expr.paren).call(this, values);
+            }
+        }
+    }
+
+    /**
+     * Check that `callee` can be called with `count` arguments.
+     */
+    public static LoxCallable callable(Object callee, int count, Token paren) {
+        if (!(callee instanceof LoxCallable))
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        return checkArity((LoxCallable) callee, count, paren);
+    }
+
+    /**
+     * Check that `function` can be called with `count` arguments.
+     */
+    public static <T extends LoxCallable> T checkArity(T function, int count, Token paren) {
+        if (function.arity() != count)
+            throw new RuntimeError(paren, String.format("Function expects %d arguments, but got %d.",
+                    function.arity(), count));
+        return function;
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr arg : expr.arguments)
-            arguments.add(evaluate(arg));
+    /**
+     * Call `object.name(...)`, a method is called directly instead of creating a bound method first.
+     */
+    private Object invoke(Expr.Call expr, Expr.Get callee) {
+        Object object = evaluate(callee.object);
+        if (!(object instanceof LoxInstance))
+            throw new RuntimeError(callee.name, "Only instances have properties.");
 
-        LoxCallable function = (LoxCallable) callee;
-        if (function.arity() != arguments.size())
-            throw new RuntimeError(expr.paren, String.format("Function expects %d arguments, but got %d.",
-                    function.arity(), arguments.size()));
-        return function.call(this, arguments);
+        LoxInstance instance = (LoxInstance) object;
+        LoxFunction method = instance.method(callee.name, callee.cache);
+        if (method == null)
+            return call(instance.get(callee.name, callee.cache), expr);
+
+        // NOTE like call(), the arguments are passed without an array
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                return checkArity(method, 0, expr.paren).invoke0(this, instance);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                return checkArity(method, 1, expr.paren).invoke1(this, instance, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return checkArity(method, 2, expr.paren).invoke2(this, instance, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return checkArity(method, 3, expr.paren).invoke3(this, instance, a, b, c);
+            }
+            case 4: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                Object d = evaluate(arguments.get(3));
+                return checkArity(method, 4, expr.paren).invoke4(this, instance, a, b, c, d);
+            }
+            default: {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = evaluate(arguments.get(i));
+                return checkArity(method, values.length, expr.paren).invoke(this, instance, values);
+            }
+        }
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance)
-            return ((LoxInstance) object).get(expr.name);
+            return ((LoxInstance) object).get(expr.name, expr.cache);
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
     }
@@ -369,18 +613,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             throw new RuntimeError(expr.name, "Only instances have fields.");
 
         Object value = evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        ((LoxInstance) object).set(expr.name, value, expr.cache);
 
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass) env.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) env.getAt(distance - 1, "this");
+        LoxClass superclass = (LoxClass) env.getAt(expr.envDepth, expr.envSlot);
+        LoxInstance object = (LoxInstance) env.getAt(expr.thisDepth, expr.thisSlot);
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        LoxFunction method = superclass.findMethod(expr.method.symbol);
         if (method == null)
             throw new RuntimeError(expr.method,
                     String.format("Undefined property '%s'.", expr.method.lexeme));
@@ -389,18 +632,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitLambdaExpr(Expr.Lambda expr) {
-        LoxFunction function = new LoxFunction(expr, env);
+        LoxFunction function = new LoxFunction(expr, capture(expr.captureDepths, expr.captureSlots));
         return function;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.stmts, new Environment(env));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        // NOTE the variables of a block in a function live in the environment of the call
+        if (stmt.hoisted)
+            return execute(stmt.stmts);
+        return executeBlock(stmt.stmts, new Environment(env, stmt.slots));
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -408,80 +653,128 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
         }
 
-        env.define(stmt.name.lexeme, null);
+        Box box = stmt.boxed ? new Box(null) : null;
+        define(stmt.name, stmt.envSlot, box);
+        Environment closure = capture(stmt.captureDepths, stmt.captureSlots);
         if (stmt.superclass != null) {
-            env = new Environment(env);
-            env.define("super", superclass);
+            closure = new Environment(closure, 1);
+            closure.define(0, superclass);
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        // NOTE in declaration order, which is the order of the method table
+        Map<Symbol, LoxFunction> methods = new LinkedHashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, env, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, closure, method.name.symbol == Symbol.INIT);
+            methods.put(method.name.symbol, function);
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
 
-        if (superclass != null)
-            env = env.enclosing;
-        env.assign(stmt.name, klass);
+        if (box != null)
+            box.value = klass;
+        else
+            define(stmt.name, stmt.envSlot, klass);
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expr);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition)))
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         else if (stmt.elseBranch != null)
-            execute(stmt.elseBranch);
-        return null;
+            return execute(stmt.elseBranch);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null)
             value = evaluate(stmt.initializer);
-        env.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.name, stmt.envSlot, stmt.boxed ? new Box(value) : value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            try {
-                execute(stmt.body);
-            } catch (Break ignored) {
+            Completion completion = execute(stmt.body);
+            if (completion == Completion.BREAK)
                 break;
-            }
+            if (completion != Completion.NORMAL)
+                return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new Break();
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, env);
-        env.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        if (stmt.boxed) {
+            // NOTE the function can capture its own box
+            Box box = new Box(null);
+            define(stmt.name, stmt.envSlot, box);
+            box.value = new LoxFunction(stmt, capture(stmt.captureDepths, stmt.captureSlots));
+            return Completion.NORMAL;
+        }
+        LoxFunction function = new LoxFunction(stmt, capture(stmt.captureDepths, stmt.captureSlots));
+        define(stmt.name, stmt.envSlot, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall)
+            return tailCall((Expr.Call) stmt.expr);
+
         Object value = null;
         if (stmt.expr != null)
             value = evaluate(stmt.expr);
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
+    }
+
+    /**
+     * `return callee(...)`, evaluates the callee and arguments like {@link #visitCallExpr(Expr.Call)}.
+     */
+    private Completion tailCall(Expr.Call expr) {
+        Object callee;
+        LoxInstance receiver = null;
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            Object object = evaluate(get.object);
+            if (!(object instanceof LoxInstance))
+                throw new RuntimeError(get.name, "Only instances have properties.");
+
+            LoxInstance instance = (LoxInstance) object;
+            callee = instance.method(get.name, get.cache);
+            if (callee != null)
+                receiver = instance;
+            else
+                callee = instance.get(get.name, get.cache);
+        } else {
+            callee = evaluate(expr.callee);
+        }
+
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = evaluate(expr.arguments.get(i));
+
+        Object value = tailCall(callable(callee, arguments.length, expr.paren), receiver, arguments);
+        if (value == TAIL_CALL)
+            return Completion.TAIL_CALL;
+        returnValue = value;
+        return Completion.RETURN;
     }
 }
@@ -1,100 +1,250 @@
 package at.lagerfeuer.lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static at.lagerfeuer.lox.TokenType.*;
 
-public class Lexer {
-    private final String SOURCE;
-    private final List<Token> TOKENS = new ArrayList<>();
+/**
+ * Splits Lox source code into tokens, one at a time with {@link #nextToken()}.
+ * <p>
+ * A lexer created from a {@link Reader} or channel reads the source in chunks into a window that only holds the token
+ * being scanned, so the memory used does not depend on the size of the source. A lexer created from a
+ * {@link ByteBuffer}, e.g. a memory-mapped file, scans the encoded bytes directly and only decodes the lexemes of the
+ * tokens it produces.
+ * <p>
+ * The last few tokens are kept in parallel arrays holding their type, position in the window and line, the
+ * {@link Parser} reads them from there with {@link #scan()} and {@link #type(int)}. {@link Token} objects are only
+ * created for the tokens that end up in the AST.
+ */
+public class Lexer implements Iterator<Token> {
+    private static final int CHUNK = 8192;
+    // number of tokens kept, the parser looks back at most two tokens
+    private static final int RING = 4;
+    private static final int MASK = RING - 1;
+    // powers of ten that are exact doubles, see number()
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // null once all of the source has been read
+    private Reader reader;
+    private ByteBuffer encoded;
+    private Charset charset;
+    // window of the source, holds the current token starting at `start`,
+    // bytes instead of chars if lexing encoded source, see isByteCompatible
+    private char[] buffer;
+    private byte[] bytes;
+    private int length;
+    // the last RING tokens, indexed by the number of the token modulo RING
+    private final int[] types = new int[RING];
+    private final int[] starts = new int[RING];
+    private final int[] lengths = new int[RING];
+    private final int[] lines = new int[RING];
+    private final Symbol[] symbols = new Symbol[RING];
+    private final double[] numbers = new double[RING];
+    // number of tokens scanned
+    private int count = 0;
+    private boolean done = false;
 
     private int start = 0;
     private int current = 0;
     private String filename;
     private int line = 1;
 
-    private static final Map<String, TokenType> KEYWORDS = new HashMap<>() {{
-        put("nil", NIL);
-        put("and", AND);
-        put("or", OR);
-        put("true", TRUE);
-        put("false", FALSE);
-        put("class", CLASS);
-        put("var", VAR);
-        put("fun", FUN);
-        put("if", IF);
-        put("else", ELSE);
-        put("for", FOR);
-        put("while", WHILE);
-        put("break", BREAK);
-        put("return", RETURN);
-        put("super", SUPER);
-        put("this", THIS);
-        put("static", STATIC);
-    }};
-
     public Lexer(String source) {
         this(source, "<stdin>");
     }
 
     public Lexer(String source, String filename) {
-        this.SOURCE = source;
+        this.buffer = source.toCharArray();
+        this.length = buffer.length;
+        this.filename = filename;
+    }
+
+    /**
+     * Lex the source read from `reader`, which is not closed by the lexer.
+     */
+    public Lexer(Reader reader, String filename) {
+        this.reader = reader;
+        this.buffer = new char[CHUNK];
+        this.filename = filename;
+    }
+
+    /**
+     * Lex the source read from `channel`, which is not closed by the lexer.
+     */
+    public Lexer(ReadableByteChannel channel, Charset charset, String filename) {
+        this(Channels.newReader(channel, charset), filename);
+    }
+
+    /**
+     * Lex the encoded source between the position and the limit of `source`, the position of `source` is not changed.
+     *
+     * @param charset charset of the source, must be byte compatible, see {@link #isByteCompatible(Charset)}
+     */
+    public Lexer(ByteBuffer source, Charset charset, String filename) {
+        if (!isByteCompatible(charset))
+            throw new IllegalArgumentException("Cannot lex " + charset + " encoded bytes");
+        this.encoded = source.slice();
+        this.charset = charset;
+        this.bytes = new byte[CHUNK];
         this.filename = filename;
     }
 
+    /**
+     * Returns whether source encoded in `charset` can be lexed as bytes, i.e. ASCII chars are encoded as single bytes
+     * and every other char is encoded without using bytes of ASCII chars.
+     */
+    public static boolean isByteCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Read the next chunk of the source into the window, dropping everything before the oldest token kept.
+     *
+     * @return false if all of the source has been read
+     */
+    private boolean fill() {
+        if (reader == null && encoded == null)
+            return false;
+        int capacity = (bytes != null) ? bytes.length : buffer.length;
+        // the token scanned next replaces the oldest one
+        int from = (count >= RING - 1) ? starts[(count + 1) & MASK] : 0;
+        if (from > 0) {
+            if (bytes != null)
+                System.arraycopy(bytes, from, bytes, 0, length - from);
+            else
+                System.arraycopy(buffer, from, buffer, 0, length - from);
+            for (int i = 0; i < RING; i++)
+                starts[i] -= from;
+            length -= from;
+            current -= from;
+            start -= from;
+        } else if (length == capacity) {
+            // the current token fills the whole window
+            if (bytes != null)
+                bytes = Arrays.copyOf(bytes, 2 * capacity);
+            else
+                buffer = Arrays.copyOf(buffer, 2 * capacity);
+        }
+        int read = (bytes != null) ? readBytes() : readChars();
+        if (read <= 0) {
+            reader = null;
+            encoded = null;
+            return false;
+        }
+        length += read;
+        return true;
+    }
+
+    private int readChars() {
+        try {
+            return reader.read(buffer, length, buffer.length - length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int readBytes() {
+        int read = Math.min(bytes.length - length, encoded.remaining());
+        encoded.get(bytes, length, read);
+        return read;
+    }
+
+    /**
+     * @return true if the char `offset` chars after the current one is in the window, reading more source if needed
+     */
+    private boolean available(int offset) {
+        while (current + offset >= length) {
+            if (!fill())
+                return false;
+        }
+        return true;
+    }
+
+    private char charAt(int index) {
+        // NOTE bytes of non-ASCII chars are never equal to the ASCII chars the lexer looks for
+        if (bytes != null)
+            return (char) (bytes[index] & 0xff);
+        return buffer[index];
+    }
+
     private char advance() {
-        return SOURCE.charAt(current++);
+        return charAt(current++);
     }
 
     private char peek() {
         if (isEOF())
             return '\0';
-        return SOURCE.charAt(current);
+        return charAt(current);
     }
 
     private char peekNext() {
         if (isNextEOF())
             return '\0';
-        return SOURCE.charAt(current + 1);
+        return charAt(current + 1);
     }
 
     private boolean match(char expected) {
         if (isEOF())
             return false;
-        if (SOURCE.charAt(current) != expected)
+        if (charAt(current) != expected)
             return false;
         current++;
         return true;
     }
 
     /**
-     * Returns whether the end of the SOURCE code been reached.
+     * Returns whether the end of the source code been reached.
      *
-     * @return true if end of the SOURCE has been reached, false otherwise.
+     * @return true if end of the source has been reached, false otherwise.
      */
     private boolean isEOF() {
-        return current >= SOURCE.length();
+        return !available(0);
     }
 
     /**
-     * Returns whether the next position on the SOURCE is the end of the SOURCE.
+     * Returns whether the next position on the source is the end of the source.
      *
-     * @return true if the next char is the end of the SOURCE, false otherwise.
+     * @return true if the next char is the end of the source, false otherwise.
      */
     private boolean isNextEOF() {
-        return (current + 1) >= SOURCE.length();
+        return !available(1);
+    }
+
+    private String text(int from, int to) {
+        if (bytes != null)
+            return new String(bytes, from, to - from, charset);
+        return new String(buffer, from, to - from);
     }
 
     private void addToken(TokenType type) {
         addToken(type, null);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = SOURCE.substring(start, current);
-        TOKENS.add(new Token(type, text, literal, filename, line));
+    private void addToken(TokenType type, Symbol symbol) {
+        int index = count++ & MASK;
+        types[index] = type.ordinal();
+        starts[index] = start;
+        lengths[index] = current - start;
+        lines[index] = line;
+        symbols[index] = symbol;
     }
 
     private void scanToken() {
@@ -147,6 +297,7 @@ public class Lexer {
             // whitespaces
             case '\n':
                 line++;
+                break;
             case ' ':
             case '\t':
             case '\r':
@@ -158,12 +309,41 @@ public class Lexer {
                 else if (isAlpha(c))
                     identifierOrKeyword();
                 else
-                    Lox.error(filename, line,
-                            "Unexpected char: " + c);
+                    unexpected();
                 break;
         }
     }
 
+    private void unexpected() {
+        // skip the remaining bytes of an encoded non-ASCII char
+        if (bytes != null && charset.equals(StandardCharsets.UTF_8) && charAt(start) >= 0x80) {
+            while ((peek() & 0xc0) == 0x80)
+                advance();
+        }
+        Lox.error(filename, line, "Unexpected char: " + text(start, current));
+    }
+
+    /**
+     * Skip whitespace up to the next token, so it does not go through {@link #scanToken()} char by char.
+     */
+    private void skipWhitespace() {
+        for (; ; ) {
+            switch (peek()) {
+                case '\n':
+                    line++;
+                    current++;
+                    break;
+                case ' ':
+                case '\t':
+                case '\r':
+                    current++;
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
     private boolean isDigit(char c) { return c >= '0' && c <= '9'; }
 
     private boolean isAlpha(char c) { return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c == '_'); }
@@ -187,9 +367,8 @@ public class Lexer {
         }
 
         advance(); // consume closing "
-        String literal = SOURCE.substring(start + 1, current - 1);
-        // TODO unescape escape sequences like '\n' here
-        addToken(STRING, literal);
+        // TODO unescape escape sequences like '\n' in literal()
+        addToken(STRING);
     }
 
 
@@ -197,33 +376,124 @@ public class Lexer {
      * Parse number literal.
      */
     private void number() {
+        // NOTE the digits without the dot, exact as long as there are at most 15 of them
+        long digits = charAt(start) - '0';
         // pure integer
         while (isDigit(peek()))
-            advance();
+            digits = 10 * digits + (advance() - '0');
         // float literal
+        int scale = 0;
         if (peek() == '.' && isDigit(peekNext())) {
             advance();
-            while (isDigit(peek()))
-                advance();
+            while (isDigit(peek())) {
+                digits = 10 * digits + (advance() - '0');
+                scale++;
+            }
         }
 
-        String literal = SOURCE.substring(start, current);
-        addToken(NUMBER, Double.parseDouble(literal));
+        // dividing two exact doubles rounds correctly, like parsing the literal does
+        int length = current - start - ((scale > 0) ? 1 : 0);
+        double value = (length <= 15 && scale < POWERS_OF_TEN.length)
+                ? digits / POWERS_OF_TEN[scale]
+                : Double.parseDouble(text(start, current));
+        addToken(NUMBER);
+        numbers[(count - 1) & MASK] = value;
     }
 
     /**
      * Parse identifier or keyword.
      */
     private void identifierOrKeyword() {
-        while (isAlphaNumeric(peek()))
-            advance();
+        // NOTE same hash as String.hashCode, identifiers only consist of ASCII chars
+        int hash = charAt(start);
+        for (char c = peek(); isAlphaNumeric(c); c = peek()) {
+            hash = 31 * hash + c;
+            current++;
+        }
 
-        String text = SOURCE.substring(start, current);
-        TokenType type = KEYWORDS.get(text);
+        TokenType keyword = keyword();
+        Symbol symbol;
+        if (keyword != IDENTIFIER)
+            symbol = Symbol.keyword(keyword);
+        else if (bytes != null)
+            symbol = Symbol.intern(bytes, start, current, hash);
+        else
+            symbol = Symbol.intern(buffer, start, current, hash);
+        addToken(keyword, symbol);
+    }
 
-        if (type == null)
-            type = IDENTIFIER;
-        addToken(type);
+    /**
+     * @return keyword between `start` and `current`, IDENTIFIER if it is not a keyword
+     */
+    private TokenType keyword() {
+        switch (charAt(start)) {
+            case 'a':
+                return keyword(1, "nd", AND);
+            case 'b':
+                return keyword(1, "reak", BREAK);
+            case 'c':
+                return keyword(1, "lass", CLASS);
+            case 'e':
+                return keyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'a':
+                            return keyword(2, "lse", FALSE);
+                        case 'o':
+                            return keyword(2, "r", FOR);
+                        case 'u':
+                            return keyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i':
+                return keyword(1, "f", IF);
+            case 'n':
+                return keyword(1, "il", NIL);
+            case 'o':
+                return keyword(1, "r", OR);
+            case 'r':
+                return keyword(1, "eturn", RETURN);
+            case 's':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 't':
+                            return keyword(2, "atic", STATIC);
+                        case 'u':
+                            return keyword(2, "per", SUPER);
+                    }
+                }
+                break;
+            case 't':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'h':
+                            return keyword(2, "is", THIS);
+                        case 'r':
+                            return keyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v':
+                return keyword(1, "ar", VAR);
+            case 'w':
+                return keyword(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    /**
+     * @return `type` if the identifier continues with `rest` after `offset` chars and ends there, IDENTIFIER otherwise
+     */
+    private TokenType keyword(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length())
+            return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (charAt(start + offset + i) != rest.charAt(i))
+                return IDENTIFIER;
+        }
+        return type;
     }
 
     /**
@@ -237,24 +507,107 @@ public class Lexer {
             while (!(peek() == '*' && peekNext() == '/') && !isEOF()) {
                 advance();
             }
-            advance(); // eat '*' in '*/'
-            advance(); // eat '/' in '*/'
+            if (!isEOF()) {
+                advance(); // eat '*' in '*/'
+                advance(); // eat '/' in '*/'
+            }
         }
 
     }
 
     /**
-     * Scan all TOKENS and return them as list.
+     * Scan the next token, it is kept until {@value RING} more tokens have been scanned.
      *
-     * @return a list of all TOKENS plus a trailing EOF token
+     * @return index of the token, an EOF token once the end of the source has been reached
      */
-    public List<Token> scanTokens() {
-        while (!isEOF()) {
+    int scan() {
+        int index = count;
+        while (count == index && !isEOF()) {
+            skipWhitespace();
+            if (isEOF())
+                break;
             start = current;
             scanToken();
         }
 
-        TOKENS.add(new Token(EOF, "", null, filename, line));
-        return TOKENS;
+        if (count == index) {
+            start = current;
+            addToken(EOF);
+        }
+        return index;
+    }
+
+    /**
+     * @param index index of a kept token, see {@link #scan()}
+     */
+    TokenType type(int index) {
+        return TYPES[types[index & MASK]];
+    }
+
+    /**
+     * @param index index of a kept token, see {@link #scan()}
+     * @return value of a number or string literal, null for other tokens
+     */
+    Object literal(int index) {
+        int from = starts[index & MASK];
+        int to = from + lengths[index & MASK];
+        switch (type(index)) {
+            case NUMBER:
+                return numbers[index & MASK];
+            case STRING:
+                return text(from + 1, to - 1);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param index index of a kept token, see {@link #scan()}
+     */
+    Token token(int index) {
+        Symbol symbol = symbols[index & MASK];
+        if (symbol != null)
+            return new Token(symbol.type, symbol, filename, lines[index & MASK]);
+        int from = starts[index & MASK];
+        String lexeme = text(from, from + lengths[index & MASK]);
+        return new Token(type(index), lexeme, literal(index), filename, lines[index & MASK]);
+    }
+
+    /**
+     * Scan the next token.
+     *
+     * @return the next token, an EOF token once the end of the source has been reached
+     */
+    public Token nextToken() {
+        return token(scan());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !done;
+    }
+
+    /**
+     * @return the next token, the last one returned is the EOF token
+     */
+    @Override
+    public Token next() {
+        if (done)
+            throw new NoSuchElementException();
+        Token next = nextToken();
+        done = (next.type == EOF);
+        return next;
+    }
+
+    /**
+     * Scan all tokens and return them as list.
+     *
+     * @return a list of all tokens plus a trailing EOF token
+     */
+    public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        while (hasNext())
+            tokens.add(next());
+        return tokens;
     }
 }
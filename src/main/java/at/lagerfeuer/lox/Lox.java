@@ -2,6 +2,10 @@ package at.lagerfeuer.lox;
 
 import at.lagerfeuer.lox.ast.Expr;
 import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.jit.Jit;
+import at.lagerfeuer.lox.nodes.NodeInterpreter;
+import at.lagerfeuer.lox.vm.JarWriter;
+import at.lagerfeuer.lox.vm.VM;
 import at.lagerfeuer.utils.ExitCode;
 import org.apache.commons.cli.*;
 
@@ -9,13 +13,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    private static Engine engine = new Interpreter();
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
     static boolean interactive = false;
@@ -26,6 +31,32 @@ public class Lox {
                 .longOpt("help")
                 .desc("Print this message")
                 .build());
+        options.addOption(Option.builder("e")
+                .longOpt("engine")
+                .hasArg()
+                .argName("name")
+                .desc("Execution engine: 'tree' (default), 'vm' or 'nodes'")
+                .build());
+        options.addOption(Option.builder("j")
+                .longOpt("jit-threshold")
+                .hasArg()
+                .argName("calls")
+                .desc(String.format("Calls after which the 'tree' engine compiles a function to JVM bytecode, "
+                        + "0 disables the JIT (default %d)", Jit.DEFAULT_THRESHOLD))
+                .build());
+        options.addOption(Option.builder("d")
+                .longOpt("max-depth")
+                .hasArg()
+                .argName("calls")
+                .desc(String.format("Maximum call depth of the 'vm' engine, which keeps its call stack on the heap "
+                        + "(default %d)", VM.DEFAULT_MAX_DEPTH))
+                .build());
+        options.addOption(Option.builder("o")
+                .longOpt("output")
+                .hasArg()
+                .argName("file")
+                .desc("Jar written by 'jlox compile <script>', defaults to the script name with '.jar'")
+                .build());
 
         DefaultParser parser = new DefaultParser();
         CommandLine cli = null;
@@ -43,6 +74,51 @@ public class Lox {
             System.exit(ExitCode.SUCCESS);
         }
 
+        if (cliArgs.length > 0 && cliArgs[0].equals("compile")) {
+            if (cliArgs.length != 2) {
+                help.printHelp("jlox", options);
+                System.exit(ExitCode.USAGE);
+            }
+            compileFile(cliArgs[1], cli.getOptionValue("output"));
+            return;
+        }
+
+        switch (cli.getOptionValue("engine", "tree")) {
+            case "tree":
+                int threshold = Jit.DEFAULT_THRESHOLD;
+                try {
+                    if (cli.hasOption("jit-threshold"))
+                        threshold = Integer.parseInt(cli.getOptionValue("jit-threshold"));
+                } catch (NumberFormatException e) {
+                    help.printHelp("jlox", options);
+                    System.exit(ExitCode.USAGE);
+                }
+                engine = new Interpreter(new Jit(threshold));
+                break;
+            case "vm":
+                int maxDepth = VM.DEFAULT_MAX_DEPTH;
+                try {
+                    if (cli.hasOption("max-depth"))
+                        maxDepth = Integer.parseInt(cli.getOptionValue("max-depth"));
+                } catch (NumberFormatException e) {
+                    help.printHelp("jlox", options);
+                    System.exit(ExitCode.USAGE);
+                }
+                // NOTE the script itself takes the first frame
+                if (maxDepth < 1) {
+                    help.printHelp("jlox", options);
+                    System.exit(ExitCode.USAGE);
+                }
+                engine = new VM(maxDepth);
+                break;
+            case "nodes":
+                engine = new NodeInterpreter();
+                break;
+            default:
+                help.printHelp("jlox", options);
+                System.exit(ExitCode.USAGE);
+        }
+
         if (cliArgs.length > 1) {
             help.printHelp("jlox", options);
             System.exit(ExitCode.USAGE);
@@ -61,17 +137,55 @@ public class Lox {
      * @param path Lox source file.
      */
     private static void runFile(String path) {
-        try {
-            String content = Files.readString(Paths.get(path), Charset.defaultCharset());
-            run(content, new File(path).getName());
+        try (FileChannel channel = FileChannel.open(Paths.get(path))) {
+            run(lexer(channel, new File(path).getName()));
             if (hadError)
                 System.exit(ExitCode.DATAERR);
             if (hadRuntimeError)
                 System.exit(ExitCode.SOFTWARE);
 
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not read file " + path);
+            System.exit(ExitCode.DATAERR);
+        }
+    }
+
+    /**
+     * Lex a source file, memory-mapped if the default charset allows lexing its bytes and small enough to be mapped at
+     * once, read in chunks otherwise. `channel` must stay open until the lexer is done.
+     */
+    private static Lexer lexer(FileChannel channel, String filename) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (Lexer.isByteCompatible(charset) && channel.size() <= Integer.MAX_VALUE)
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), charset, filename);
+        return new Lexer(channel, charset, filename);
+    }
+
+    /**
+     * Compile the file supplied by `path` into a runnable jar, see {@link JarWriter}.
+     *
+     * @param path   Lox source file.
+     * @param output path of the jar, null to replace the extension of `path` with `.jar`.
+     */
+    private static void compileFile(String path, String output) {
+        if (output == null)
+            output = path.replaceFirst("(\\.lox)?$", ".jar");
+
+        List<Stmt> stmts;
+        try (FileChannel channel = FileChannel.open(Paths.get(path))) {
+            stmts = parse(lexer(channel, new File(path).getName()));
+        } catch (IOException | UncheckedIOException e) {
             System.err.println("Could not read file " + path);
             System.exit(ExitCode.DATAERR);
+            return;
+        }
+
+        try {
+            if (stmts == null || !JarWriter.write(stmts, Paths.get(output)))
+                System.exit(ExitCode.DATAERR);
+        } catch (IOException e) {
+            System.err.println("Could not write file " + output);
+            System.exit(ExitCode.CANTCREAT);
         }
     }
 
@@ -89,7 +203,6 @@ public class Lox {
                 if (line == null || line.isEmpty()) // CTRL + D
                     return;
                 run(line, "<stdin>");
-                hadError = false;
             }
         } catch (IOException e) {
             System.err.println("Could not read from STDIN");
@@ -97,30 +210,49 @@ public class Lox {
         }
     }
 
-    private static void run(String source, String filename) {
-        Lexer lexer = new Lexer(source, filename);
-        List<Token> tokens = lexer.scanTokens();
-
-        Parser parser = new Parser(tokens);
+    /**
+     * Lex, parse, resolve and fold the source of `lexer`.
+     *
+     * @return the resolved statements, null if an error occurred
+     */
+    private static List<Stmt> parse(Lexer lexer) {
+        // the parser pulls tokens from the lexer as it goes
+        Parser parser = new Parser(lexer);
         List<Stmt> stmts = parser.parse();
 
         // exit if parser error occurred.
         if (hadError)
-            return;
+            return null;
 
-        ResolverPass resolver = new ResolverPass(interpreter);
+        ResolverPass resolver = new ResolverPass();
         resolver.resolve(stmts);
 
         // exit if resolver error occurred.
         if (hadError)
+            return null;
+
+        new ConstantFoldingPass().fold(stmts);
+        return stmts;
+    }
+
+    static void run(String source, String filename) {
+        run(new Lexer(source, filename));
+    }
+
+    private static void run(Lexer lexer) {
+        // NOTE errors of a previous run in the same session must not stop this one
+        hadError = false;
+        hadRuntimeError = false;
+        List<Stmt> stmts = parse(lexer);
+        if (stmts == null)
             return;
 
         if (interactive && stmts.size() == 1 && stmts.get(0) instanceof Stmt.Expression) {
             // Print the result of a single expression
-            Object result = interpreter.interpret(((Stmt.Expression) stmts.get(0)).expr);
+            Object result = engine.interpret(((Stmt.Expression) stmts.get(0)).expr);
             System.out.println(Interpreter.stringify(result));
         } else {
-            interpreter.interpret(stmts);
+            engine.interpret(stmts);
         }
     }
 
@@ -130,6 +262,7 @@ public class Lox {
     }
 
     public static void error(Token token, String message) {
+        hadError = true;
         if (token.type == TokenType.EOF) {
             report(token.filename, token.line, " at end", message);
         } else {
@@ -138,8 +271,7 @@ public class Lox {
     }
 
     public static void runtimeError(RuntimeError error) {
-        System.err.printf("[RuntimeError] %s:%d\t%s%n",
-                error.token.filename, error.token.line, error.getMessage());
+        System.err.println(error.report());
         hadRuntimeError = true;
     }
 
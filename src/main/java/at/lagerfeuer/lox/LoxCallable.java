@@ -1,8 +1,34 @@
 package at.lagerfeuer.lox;
 
-import java.util.List;
-
+/**
+ * Something that can be called from Lox code.
+ * <p>
+ * Calls with up to four arguments go through `call0` to `call4`, so the caller does not have to collect the arguments
+ * first. By default they fall back to {@link #call(Interpreter, Object[])}, implementations override the ones they
+ * can do without the array.
+ */
 public interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[]{a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[]{a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[]{a, b, c});
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, new Object[]{a, b, c, d});
+    }
 }
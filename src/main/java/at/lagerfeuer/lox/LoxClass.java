@@ -1,22 +1,50 @@
 package at.lagerfeuer.lox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LoxClass extends LoxInstance implements LoxCallable {
     final String name;
     final LoxClass superclass;
-    private final Map<String, LoxFunction> methods;
+    // methods of this class and all its superclasses, a method keeps the index it has in the superclass
+    private final LoxFunction[] methods;
+    private final Map<Symbol, Integer> methodIndices;
+    private final LoxFunction initializer;
+    // root of the shapes of all instances of this class
+    final Shape instanceShape = new Shape();
+    // largest number of fields an instance got so far, see LoxInstance.store
+    int instanceSize = 0;
 
-    LoxClass(String name, Map<String, LoxFunction> methods) {
+    LoxClass(String name, Map<Symbol, LoxFunction> methods) {
         this(name, null, methods);
     }
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, LoxClass superclass, Map<Symbol, LoxFunction> methods) {
         super(null);
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
+
+        List<LoxFunction> table = new ArrayList<>();
+        Map<Symbol, Integer> indices = new HashMap<>();
+        if (superclass != null) {
+            table.addAll(Arrays.asList(superclass.methods));
+            indices.putAll(superclass.methodIndices);
+        }
+        for (Map.Entry<Symbol, LoxFunction> method : methods.entrySet()) {
+            Integer index = indices.get(method.getKey());
+            if (index != null) {
+                table.set(index, method.getValue());
+            } else {
+                indices.put(method.getKey(), table.size());
+                table.add(method.getValue());
+            }
+        }
+        this.methods = table.toArray(new LoxFunction[0]);
+        this.methodIndices = indices;
+        this.initializer = findMethod(Symbol.INIT);
     }
 
     @Override
@@ -26,34 +54,82 @@ public class LoxClass extends LoxInstance implements LoxCallable {
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null)
             return 0;
         return initializer.arity();
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call(Interpreter interpreter, Object[] arguments) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke(interpreter, instance, arguments);
         }
         return instance;
     }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name))
-            return methods.get(name);
-        return null;
+    // NOTE the arity was checked by the caller, without an initializer it is 0
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null)
+            initializer.invoke0(interpreter, instance);
+        return instance;
     }
 
     @Override
-    Object get(Token name) {
-        LoxFunction method = findMethod(name.lexeme);
+    public Object call1(Interpreter interpreter, Object a) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke1(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke2(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke3(interpreter, instance, a, b, c);
+        return instance;
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke4(interpreter, instance, a, b, c, d);
+        return instance;
+    }
+
+    /**
+     * Look up a method of this class or any of its superclasses.
+     */
+    public LoxFunction findMethod(Symbol name) {
+        Integer index = methodIndices.get(name);
+        return (index == null) ? null : methods[index];
+    }
+
+    @Override
+    public Object get(Token name) {
+        LoxFunction method = findMethod(name.symbol);
         if (method != null)
-            return (method.getQualifiers().contains(Qualifier.STATIC)) ? method : method.bind(this);
+            return method.isStatic() ? method : method.bind(this);
 
         throw new RuntimeError(name, String.format("Undefined property '%s'.", name.lexeme));
     }
+
+    @Override
+    public Object get(Token name, InlineCache cache) {
+        return get(name);
+    }
+
+    @Override
+    public LoxFunction method(Token name, InlineCache cache) {
+        return null;
+    }
 }
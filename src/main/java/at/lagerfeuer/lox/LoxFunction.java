@@ -2,15 +2,23 @@ package at.lagerfeuer.lox;
 
 import at.lagerfeuer.lox.ast.Expr;
 import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.jit.CompiledFunction;
+import at.lagerfeuer.lox.jit.Jit;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class LoxFunction implements LoxCallable {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
     private final Stmt.Function declaration;
     private final Environment closure;
     private final boolean isInitializer;
+    // `this` of a bound method, null otherwise
+    private final LoxInstance receiver;
+    // looked up on the first call, shared with bound copies
+    private Jit.Profile profile = null;
 
     public List<Qualifier> getQualifiers() {
         return qualifiers;
@@ -27,17 +35,24 @@ public class LoxFunction implements LoxCallable {
     }
 
     public LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, List<Qualifier> qualifiers) {
+        this(declaration, closure, isInitializer, qualifiers, null);
+    }
+
+    private LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+                        List<Qualifier> qualifiers, LoxInstance receiver) {
         this.declaration = declaration;
         this.closure = closure;
         this.isInitializer = isInitializer;
         this.qualifiers = qualifiers;
+        this.receiver = receiver;
     }
 
     public LoxFunction(Expr.Lambda lambda, Environment closure) {
-        this.declaration = new Stmt.Function(null, lambda.parameters, lambda.body, new ArrayList<>());
-        this.closure = closure;
-        this.isInitializer = false;
-        this.qualifiers = null;
+        this(lambda.function, closure);
+    }
+
+    public boolean isStatic() {
+        return qualifiers.contains(Qualifier.STATIC);
     }
 
     @Override
@@ -45,25 +60,189 @@ public class LoxFunction implements LoxCallable {
         return declaration.parameters.size();
     }
 
+    /**
+     * Call the function, runs the compiled code once the {@link Jit} compiled this function.
+     */
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.parameters.size(); i++) {
-            environment.define(declaration.parameters.get(i).lexeme,
-                    arguments.get(i));
-        }
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(interpreter, receiver, arguments);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return ret) {
-            if (isInitializer)
-                return closure.getAt(0, "this");
-            return ret.value;
-        }
+    // NOTE arguments are written straight into the new environment, parameters occupy the first slots
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke0(interpreter, receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(interpreter, receiver, a, b, c);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return invoke4(interpreter, receiver, a, b, c, d);
+    }
+
+    // NOTE `invoke` calls the function as a method of `instance` without binding it first, `this` is stored in the
+    // environment of the call; static methods ignore the instance
+
+    public Object invoke0(Interpreter interpreter, LoxInstance instance) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, NO_ARGUMENTS));
+        return execute(interpreter, instance, frame(instance));
+    }
+
+    public Object invoke1(Interpreter interpreter, LoxInstance instance, Object a) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, new Object[]{a}));
+        Environment environment = frame(instance);
+        environment.define(0, a);
+        return execute(interpreter, instance, environment);
+    }
+
+    public Object invoke2(Interpreter interpreter, LoxInstance instance, Object a, Object b) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, new Object[]{a, b}));
+        Environment environment = frame(instance);
+        environment.define(0, a);
+        environment.define(1, b);
+        return execute(interpreter, instance, environment);
+    }
+
+    public Object invoke3(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, new Object[]{a, b, c}));
+        Environment environment = frame(instance);
+        environment.define(0, a);
+        environment.define(1, b);
+        environment.define(2, c);
+        return execute(interpreter, instance, environment);
+    }
+
+    public Object invoke4(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c, Object d) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, new Object[]{a, b, c, d}));
+        Environment environment = frame(instance);
+        environment.define(0, a);
+        environment.define(1, b);
+        environment.define(2, c);
+        environment.define(3, d);
+        return execute(interpreter, instance, environment);
+    }
+
+    public Object invoke(Interpreter interpreter, LoxInstance instance, Object[] arguments) {
+        CompiledFunction code = compiled(interpreter);
+        if (code != null)
+            return result(interpreter, instance, code.call(interpreter, closure, instance, arguments));
+
+        Environment environment = frame(instance);
+        for (int i = 0; i < arguments.length; i++)
+            environment.define(i, arguments[i]);
+        return execute(interpreter, instance, environment);
+    }
+
+    /**
+     * @return environment of a call, holding `instance` as `this` if the function is a method
+     */
+    private Environment frame(LoxInstance instance) {
+        Environment environment = new Environment(closure, declaration.frameSlots);
+        if (declaration.thisSlot >= 0)
+            environment.define(declaration.thisSlot, instance);
+        return environment;
+    }
+
+    /**
+     * @return the compiled code of this function, null as long as it is interpreted
+     */
+    private CompiledFunction compiled(Interpreter interpreter) {
+        if (profile == null)
+            profile = interpreter.jit.profile(declaration);
+        return interpreter.jit.enter(profile, declaration);
+    }
+
+    private Object execute(Interpreter interpreter, LoxInstance instance, Environment environment) {
+        if (declaration.boxedParameters != null)
+            boxParameters(environment);
+        Completion completion = interpreter.executeBlock(declaration.body, environment);
+        if (completion == Completion.TAIL_CALL)
+            return runTailCalls(interpreter);
+        Object value = null;
+        if (completion == Completion.RETURN)
+            value = interpreter.takeReturnValue();
+        return result(instance, value);
+    }
+
+    /**
+     * Parameters captured by a closure and assigned afterwards live in a {@link Box}.
+     */
+    private void boxParameters(Environment environment) {
+        for (int slot : declaration.boxedParameters)
+            environment.define(slot, new Box(environment.get(slot)));
+    }
 
+    private Object result(Interpreter interpreter, LoxInstance instance, Object value) {
+        if (value == Interpreter.TAIL_CALL)
+            return runTailCalls(interpreter);
+        return result(instance, value);
+    }
+
+    private Object result(LoxInstance instance, Object value) {
         if (isInitializer)
-            return closure.getAt(0, "this");
-        return null;
+            return instance;
+        return value;
+    }
+
+    /**
+     * Trampoline of tail calls: the function that made the tail call has returned, run the pending call and every tail
+     * call it makes in turn. The stack depth stays the same no matter how many tail calls follow each other.
+     */
+    private static Object runTailCalls(Interpreter interpreter) {
+        while (true) {
+            LoxFunction function = interpreter.tailFunction;
+            // NOTE a bound method called as a plain function keeps its receiver
+            LoxInstance instance = (interpreter.tailReceiver != null) ? interpreter.tailReceiver : function.receiver;
+            Object[] arguments = interpreter.tailArguments;
+            interpreter.tailFunction = null;
+            interpreter.tailReceiver = null;
+            interpreter.tailArguments = null;
+
+            CompiledFunction code = function.compiled(interpreter);
+            Object value = null;
+            if (code != null) {
+                value = code.call(interpreter, function.closure, instance, arguments);
+                if (value == Interpreter.TAIL_CALL)
+                    continue;
+            } else {
+                Environment environment = function.frame(instance);
+                for (int i = 0; i < arguments.length; i++)
+                    environment.define(i, arguments[i]);
+                if (function.declaration.boxedParameters != null)
+                    function.boxParameters(environment);
+                Completion completion = interpreter.executeBlock(function.declaration.body, environment);
+                if (completion == Completion.TAIL_CALL)
+                    continue;
+                if (completion == Completion.RETURN)
+                    value = interpreter.takeReturnValue();
+            }
+            return function.result(instance, value);
+        }
     }
 
     @Override
@@ -75,8 +254,8 @@ public class LoxFunction implements LoxCallable {
     }
 
     public LoxFunction bind(LoxInstance instance) {
-        Environment env = new Environment(closure);
-        env.define("this", instance);
-        return new LoxFunction(declaration, env, isInitializer);
+        LoxFunction bound = new LoxFunction(declaration, closure, isInitializer, new ArrayList<>(), instance);
+        bound.profile = profile;
+        return bound;
     }
 }
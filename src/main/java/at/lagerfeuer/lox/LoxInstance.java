@@ -1,36 +1,84 @@
 package at.lagerfeuer.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
-    private final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_VALUES = new Object[0];
+
+    final LoxClass klass;
+    // the shape maps field names to slots of `values`
+    Shape shape;
+    Object[] values;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
+        if (klass != null) {
+            this.shape = klass.instanceShape;
+            this.values = (klass.instanceSize == 0) ? NO_VALUES : new Object[klass.instanceSize];
+        } else {
+            // a class as an instance, its fields get a shape tree of their own
+            this.shape = new Shape();
+            this.values = NO_VALUES;
+        }
     }
 
-    Object get(Token name) {
-        if (fields.containsKey(name.lexeme))
-            return fields.get(name.lexeme);
+    public Object get(Token name) {
+        int slot = shape.slot(name.symbol);
+        if (slot >= 0)
+            return values[slot];
+        return bindMethod(name, klass.findMethod(name.symbol));
+    }
 
-        LoxFunction method = klass.findMethod(name.lexeme);
-        if (method != null)
-            return (method.getQualifiers().contains(Qualifier.STATIC)) ? method : method.bind(this);
+    /**
+     * Same as {@link #get(Token)}, through the inline cache of the access site.
+     */
+    public Object get(Token name, InlineCache cache) {
+        return cache.get(this, name);
+    }
 
-        // look up superclass methods if not found in class
-        if (klass.superclass != null) {
-            method = klass.superclass.findMethod(name.lexeme);
-            if (method != null)
-                return method.bind(this);
-        }
+    /**
+     * Method called by `instance.name(...)`, so the call does not need a bound copy of it.
+     *
+     * @return null if the property is not a method, the caller falls back to {@link #get(Token, InlineCache)}
+     */
+    public LoxFunction method(Token name, InlineCache cache) {
+        return cache.method(this, name);
+    }
+
+    Object bindMethod(Token name, LoxFunction method) {
+        if (method != null)
+            return method.isStatic() ? method : method.bind(this);
 
         throw new RuntimeError(name, String.format("Undefined property '%s'.", name.lexeme));
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    public void set(Token name, Object value) {
+        Shape target = shape.with(name.symbol);
+        store(target, target.slot(name.symbol), value);
+    }
+
+    /**
+     * Same as {@link #set(Token, Object)}, through the inline cache of the access site.
+     */
+    public void set(Token name, Object value, InlineCache cache) {
+        cache.set(this, name, value);
+    }
+
+    /**
+     * Store a field, `target` is the current shape or a transition of it that adds `slot`.
+     */
+    void store(Shape target, int slot, Object value) {
+        if (slot >= values.length) {
+            int size = target.size();
+            if (klass != null) {
+                // NOTE later instances of the class start out with room for all fields seen so far
+                klass.instanceSize = Math.max(klass.instanceSize, size);
+                size = klass.instanceSize;
+            }
+            values = Arrays.copyOf(values, size);
+        }
+        values[slot] = value;
+        shape = target;
     }
 
     @Override
@@ -13,40 +13,59 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> TOKENS;
+    private final Lexer LEXER;
+    // number of tokens scanned by the lexer
+    private int read = 0;
     private int current = 0;
 
-    public Parser(List<Token> tokens) {
-        this.TOKENS = tokens;
+    /**
+     * Parse tokens as they are scanned by `lexer`, only the tokens stored in the AST are created as {@link Token}.
+     */
+    public Parser(Lexer lexer) {
+        this.LEXER = lexer;
+    }
+
+    private TokenType type(int index) {
+        while (read <= index) {
+            LEXER.scan();
+            read++;
+        }
+        return LEXER.type(index);
+    }
+
+    private TokenType peekType() {
+        return type(current);
     }
 
     private Token peek() {
-        return TOKENS.get(current);
+        type(current);
+        return LEXER.token(current);
     }
 
     private Token previous() {
-        return TOKENS.get(current - 1);
+        return LEXER.token(current - 1);
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return peekType() == EOF;
     }
 
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd())
             current++;
-        return previous();
     }
 
-    private Token reverse() {
+    /**
+     * Un-advance the current token.
+     */
+    private void reverse() {
         current--;
-        return (current > 0) ? previous() : null;
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd())
             return false;
-        return peek().type == type;
+        return peekType() == type;
     }
 
     private boolean match(TokenType... types) {
@@ -59,9 +78,14 @@ public class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type))
-            return advance();
+    /**
+     * Consume the current token, use {@link #previous()} to get it.
+     */
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -72,10 +96,10 @@ public class Parser {
     private void synchronize() {
         advance();
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON)
+            if (type(current - 1) == SEMICOLON)
                 return;
 
-            switch (peek().type) {
+            switch (peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -125,7 +149,8 @@ public class Parser {
     }
 
     private Stmt classDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect class name.");
+        consume(IDENTIFIER, "Expect class name.");
+        Token name = previous();
         Expr.Variable superclass = null;
         if (match(LESS)) {
             consume(IDENTIFIER, "Expect class name.");
@@ -152,7 +177,8 @@ public class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IDENTIFIER, "Expect variable name.");
+        Token name = previous();
         Expr initializer = null;
         if (match(EQUAL))
             initializer = expression();
@@ -165,7 +191,8 @@ public class Parser {
     }
 
     private Stmt.Function function(String kind, List<Qualifier> qualifiers) {
-        Token name = consume(IDENTIFIER, "Expect " + kind + " identifier.");
+        consume(IDENTIFIER, "Expect " + kind + " identifier.");
+        Token name = previous();
 
         consume(LPAREN, "Expect '(' after '" + kind + "' identifier.");
         List<Token> parameters = parameterList(kind);
@@ -184,7 +211,8 @@ public class Parser {
                 if (parameters.size() > Constants.MAX_CALL_ARGUMENTS)
                     throw error(peek(), String.format("%s cannot have more than %d parameters",
                             kind, Constants.MAX_CALL_ARGUMENTS));
-                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+                consume(IDENTIFIER, "Expect parameter name.");
+                parameters.add(previous());
             } while (match(COMMA));
         }
         return parameters;
@@ -251,14 +279,14 @@ public class Parser {
 
         // desugaring of for loop (convert to while loop)
         if (increment != null)
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+            body = new Stmt.Block(new ArrayList<>(Arrays.asList(body, new Stmt.Expression(increment))));
 
         body = new Stmt.While(
                 (condition == null) ? new Expr.Literal(true) : condition,
                 body);
 
         if (initializer != null)
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = new Stmt.Block(new ArrayList<>(Arrays.asList(initializer, body)));
 
         return body;
     }
@@ -430,7 +458,8 @@ public class Parser {
             if (match(LPAREN))
                 expr = finishCall(expr);
             else if (match(DOT)) {
-                Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+                consume(IDENTIFIER, "Expect property name after '.'.");
+                Token name = previous();
                 expr = new Expr.Get(expr, name);
             } else
                 break;
@@ -450,7 +479,8 @@ public class Parser {
             } while (match(COMMA));
         }
 
-        Token paren = consume(RPAREN, "Expect ')' after arguments in 'call'");
+        consume(RPAREN, "Expect ')' after arguments in 'call'");
+        Token paren = previous();
         return new Expr.Call(callee, paren, arguments);
     }
 
@@ -468,13 +498,14 @@ public class Parser {
         if (match(SUPER)) {
             Token keyword = previous();
             consume(DOT, "Expect '.' after 'super'.");
-            Token method = consume(IDENTIFIER, "Expect superclass method name.");
+            consume(IDENTIFIER, "Expect superclass method name.");
+            Token method = previous();
             return new Expr.Super(keyword, method);
         }
         if (match(IDENTIFIER))
             return new Expr.Variable(previous());
         if (match(NUMBER, STRING))
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(LEXER.literal(current - 1));
 
         if (match(LPAREN)) {
             Expr expr = expression();
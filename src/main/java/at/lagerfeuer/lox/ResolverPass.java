@@ -3,15 +3,97 @@ package at.lagerfeuer.lox;
 import at.lagerfeuer.lox.ast.Expr;
 import at.lagerfeuer.lox.ast.Stmt;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
+    /**
+     * A variable declared in a local scope.
+     */
+    private static class Local {
+        final int slot;
+        // environment of the interpreter holding the variable, counted from the outermost one, and its slot there
+        final int level;
+        final int register;
+        boolean defined = false;
+        // false until the declaration is complete, a function can capture its own name before it is stored
+        boolean initialized = false;
+        boolean captured = false;
+        boolean reassigned = false;
+        // marks the declaration as boxed
+        Runnable box = null;
+        // variables and assignments referring to it, marked as boxed too
+        List<Expr> references = null;
+        // null unless declared by `var`
+        Stmt.Var declaration = null;
+
+        Local(int slot, int level, int register) {
+            this.slot = slot;
+            this.level = level;
+            this.register = register;
+        }
+
+        void reference(Expr expr) {
+            if (references == null)
+                references = new ArrayList<>();
+            references.add(expr);
+        }
+
+        /**
+         * A captured variable that changes after it was captured lives in a {@link Box} shared by all closures.
+         */
+        boolean isBoxed() {
+            return captured && reassigned;
+        }
+    }
+
+    /**
+     * A function or class that captures variables of enclosing scopes when it is created. The interpreter copies the
+     * captured variables into a flat environment, which is the closure of the function or of the methods of the class.
+     */
+    private static class Closure {
+        // index of the first scope belonging to the closure
+        final int scope;
+        // level of the captured environment
+        final int level;
+        // where to copy each captured variable from, relative to the scope the closure is created in
+        final List<Integer> depths = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        final Map<Local, Integer> captures = new HashMap<>();
+
+        Closure(int scope, int level) {
+            this.scope = scope;
+            this.level = level;
+        }
+    }
+
+    /**
+     * An environment of the interpreter. The scopes of a function share the environment of the call, the variables of
+     * a block get the slots after the ones of the enclosing scopes. Blocks outside of functions get their own.
+     */
+    private static class Frame {
+        final boolean function;
+        int next = 0;
+        int size = 0;
+
+        Frame(boolean function) {
+            this.function = function;
+        }
+
+        int allocate() {
+            size = Math.max(size, next + 1);
+            return next++;
+        }
+    }
+
+    private final Stack<Map<Symbol, Local>> scopes = new Stack<>();
 
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Closure> closures = new Stack<>();
+
+    private final Stack<Frame> frames = new Stack<>();
 
     private FunctionType currentFunction = FunctionType.NONE;
 
@@ -19,36 +101,153 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private int loopNesting = 0;
 
-    ResolverPass(Interpreter interpreter) {
-        this.interpreter = interpreter;
-    }
-
     void resolve(List<Stmt> stmts) {
         for (Stmt stmt : stmts)
             resolve(stmt);
     }
 
-    private void declare(Token name) {
+    /**
+     * Declare a variable in the innermost scope.
+     *
+     * @param name variable name
+     * @return slot of the variable in its scope, or -1 if it is a global.
+     */
+    private int declare(Token name) {
         if (scopes.isEmpty())
-            return;
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme))
+            return -1;
+        Map<Symbol, Local> scope = scopes.peek();
+        if (scope.containsKey(name.symbol)) {
             Lox.error(name, String.format("Variable %s already declared in scope.", name.lexeme));
-        scope.put(name.lexeme, false);
+            return scope.get(name.symbol).slot;
+        }
+        Local local = new Local(scope.size(), frames.size(), frames.peek().allocate());
+        scope.put(name.symbol, local);
+        return local.slot;
+    }
+
+    /**
+     * @return slot of a variable declared in the innermost scope in its environment, or -1 if it is a global.
+     */
+    private int registerOf(Token name) {
+        if (scopes.isEmpty())
+            return -1;
+        return scopes.peek().get(name.symbol).register;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty())
             return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.symbol).defined = true;
+    }
+
+    /**
+     * The declaration of `name` is complete, marks it as boxed through `box` if it has to be.
+     */
+    private void initialize(Token name, Runnable box) {
+        if (scopes.isEmpty())
+            return;
+        Local local = scopes.peek().get(name.symbol);
+        local.initialized = true;
+        local.box = box;
+    }
+
+    /**
+     * Declare and define an implicit variable like `this` or `super`.
+     */
+    private void defineImplicit(Symbol name) {
+        Local local = new Local(scopes.peek().size(), frames.size(), frames.peek().allocate());
+        local.defined = true;
+        local.initialized = true;
+        scopes.peek().put(name, local);
+    }
+
+    /**
+     * Declare `this` in the scope around the methods of a class. It has no environment of its own, every method binds
+     * it to a slot of the environment of its calls, see {@link #bindThis()}.
+     */
+    private void declareThis() {
+        Local local = new Local(scopes.peek().size(), -1, -1);
+        local.defined = true;
+        local.initialized = true;
+        scopes.peek().put(Symbol.THIS, local);
+    }
+
+    /**
+     * Bind `this` to the next slot of the environment of the method being resolved.
+     *
+     * @return slot of `this` in the environment of a call
+     */
+    private int bindThis() {
+        // NOTE the scope of `this` is right outside of the function scope
+        Map<Symbol, Local> scope = scopes.get(scopes.size() - 2);
+        Local local = new Local(scope.get(Symbol.THIS).slot, frames.size(), frames.peek().allocate());
+        local.defined = true;
+        local.initialized = true;
+        scope.put(Symbol.THIS, local);
+        return local.register;
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new HashMap<>());
+    }
+
+    /**
+     * @return number of slots needed by the scope.
+     */
+    private int endScope() {
+        Map<Symbol, Local> scope = scopes.pop();
+        for (Local local : scope.values()) {
+            if (local.declaration != null)
+                local.declaration.reassigned = local.reassigned;
+            if (!local.isBoxed())
+                continue;
+            if (local.box != null)
+                local.box.run();
+            if (local.references == null)
+                continue;
+            for (Expr reference : local.references) {
+                if (reference instanceof Expr.Variable)
+                    ((Expr.Variable) reference).boxed = true;
+                else
+                    ((Expr.Assign) reference).boxed = true;
+            }
+        }
+        // NOTE the slots can be reused by the following blocks
+        frames.peek().next -= scope.size();
+        return scope.size();
     }
 
-    private void endScope() {
-        scopes.pop();
+    private void beginFrame(boolean function) {
+        frames.push(new Frame(function));
+    }
+
+    /**
+     * @return number of slots needed by the environment
+     */
+    private int endFrame() {
+        return frames.pop().size;
+    }
+
+    /**
+     * The captured environment of the closure is the outermost environment its scopes can see.
+     */
+    private void beginClosure() {
+        beginFrame(false);
+        closures.push(new Closure(scopes.size(), frames.size()));
+    }
+
+    /**
+     * @return where to copy the captured variables from, depths and slots
+     */
+    private int[][] endClosure() {
+        Closure closure = closures.pop();
+        endFrame();
+        int[][] captures = new int[2][closure.depths.size()];
+        for (int i = 0; i < captures[0].length; i++) {
+            captures[0][i] = closure.depths.get(i);
+            captures[1][i] = closure.slots.get(i);
+        }
+        return captures;
     }
 
     private void resolve(Expr expr) {
@@ -59,34 +258,137 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         stmt.accept(this);
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    /**
+     * Find the scope a variable is declared in.
+     *
+     * @param name variable name
+     * @return number of scopes between the innermost scope and the declaring one, or -1 if it is a global.
+     */
+    private int depthOf(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--)
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
-            }
+            if (scopes.get(i).containsKey(name.symbol))
+                return scopes.size() - 1 - i;
         // Not found, assume it's global.
-    }
-
-    private void resolveFunction(Stmt.Function function, FunctionType type) {
+        return -1;
+    }
+
+    private int slotOf(Token name, int depth) {
+        if (depth < 0)
+            return -1;
+        return scopes.get(scopes.size() - 1 - depth).get(name.symbol).slot;
+    }
+
+    private Local localOf(Symbol name, int depth) {
+        return scopes.get(scopes.size() - 1 - depth).get(name);
+    }
+
+    /**
+     * Position of a local variable in the environments of the interpreter: the environments of the innermost closure,
+     * followed by the environment holding its captured variables.
+     *
+     * @param depth resolved depth of the variable
+     * @return depth and slot
+     */
+    private int[] environmentOf(Symbol name, int depth) {
+        int scope = scopes.size() - 1 - depth;
+        Local local = scopes.get(scope).get(name);
+        if (closures.isEmpty() || scope >= closures.peek().scope)
+            return new int[]{frames.size() - local.level, local.register};
+        Closure closure = closures.peek();
+        return new int[]{frames.size() - closure.level, capture(closures.size() - 1, scope, local)};
+    }
+
+    /**
+     * Capture a variable declared outside of closure `index`, through the enclosing closures if needed.
+     *
+     * @param scope index of the declaring scope
+     * @return slot of the variable in the captured environment of the closure
+     */
+    private int capture(int index, int scope, Local local) {
+        Closure closure = closures.get(index);
+        Integer slot = closure.captures.get(local);
+        if (slot != null)
+            return slot;
+
+        // NOTE the closure is created in the environment just outside of it
+        if (index > 0 && scope < closures.get(index - 1).scope) {
+            Closure enclosing = closures.get(index - 1);
+            closure.slots.add(capture(index - 1, scope, local));
+            closure.depths.add(closure.level - 1 - enclosing.level);
+        } else {
+            closure.slots.add(local.register);
+            closure.depths.add(closure.level - 1 - local.level);
+            local.captured = true;
+            if (!local.initialized)
+                local.reassigned = true;
+        }
+        slot = closure.depths.size() - 1;
+        closure.captures.put(local, slot);
+        return slot;
+    }
+
+    /**
+     * Resolve parameters and body of a function or lambda.
+     *
+     * @param boxed receives the parameters that have to be boxed
+     * @return number of slots of the function scope and of the environment of a call, which also holds the variables
+     * of all blocks of the function, and the slot of `this` in that environment, -1 unless it is a method.
+     */
+    private int[] resolveFunction(List<Token> parameters, List<Stmt> body, FunctionType type, List<Integer> boxed) {
         FunctionType enclosing = currentFunction;
         currentFunction = type;
+        // 'break' cannot leave the function
+        int enclosingLoopNesting = loopNesting;
+        loopNesting = 0;
 
+        beginFrame(true);
         beginScope();
-        for (Token parameter : function.parameters) {
-            declare(parameter);
+        for (Token parameter : parameters) {
+            int slot = declare(parameter);
             define(parameter);
+            initialize(parameter, () -> boxed.add(slot));
         }
-        resolve(function.body);
-        endScope();
+        // `this` follows the parameters, so a method call needs no environment holding only `this`
+        int thisSlot = (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) ? bindThis() : -1;
+        resolve(body);
+        int slots = endScope();
+        int frameSlots = endFrame();
 
+        loopNesting = enclosingLoopNesting;
         currentFunction = enclosing;
+        return new int[]{slots, frameSlots, thisSlot};
+    }
+
+    private void resolveFunction(Stmt.Function function, FunctionType type) {
+        List<Integer> boxed = new ArrayList<>();
+        int[] slots = resolveFunction(function.parameters, function.body, type, boxed);
+        function.slots = slots[0];
+        function.frameSlots = slots[1];
+        function.thisSlot = slots[2];
+        function.boxedParameters = boxedParameters(boxed);
+    }
+
+    private static int[] boxedParameters(List<Integer> boxed) {
+        if (boxed.isEmpty())
+            return null;
+        return boxed.stream().mapToInt(Integer::intValue).toArray();
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.depth = depthOf(expr.name);
+        expr.slot = slotOf(expr.name, expr.depth);
+        if (expr.depth >= 0) {
+            int[] environment = environmentOf(expr.name.symbol, expr.depth);
+            expr.envDepth = environment[0];
+            expr.envSlot = environment[1];
+            Local local = localOf(expr.name.symbol, expr.depth);
+            local.reassigned = true;
+            local.reference(expr);
+        } else {
+            expr.global = Globals.indexOf(expr.name.symbol);
+        }
         return null;
     }
 
@@ -94,9 +396,39 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitBinaryExpr(Expr.Binary expr) {
         resolve(expr.left);
         resolve(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+            case STAR:
+            case SLASH:
+                expr.numeric = true;
+                break;
+            case PLUS:
+                // could concatenate strings unless both operands are numbers
+                expr.numeric = isNumeric(expr.left) && isNumeric(expr.right);
+                break;
+            default:
+                break;
+        }
         return null;
     }
 
+    /**
+     * Whether `expr` evaluates to a number whenever it does not fail with a RuntimeError.
+     * Must be called after `expr` was resolved.
+     */
+    public static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return ((Expr.Literal) expr).value instanceof Double;
+        if (expr instanceof Expr.Grouping)
+            return isNumeric(((Expr.Grouping) expr).expr);
+        if (expr instanceof Expr.Unary)
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+        if (expr instanceof Expr.Binary)
+            return ((Expr.Binary) expr).numeric;
+        return false;
+    }
+
     @Override
     public Void visitGroupingExpr(Expr.Grouping expr) {
         resolve(expr.expr);
@@ -116,9 +448,21 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE)
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.symbol)
+                && !scopes.peek().get(expr.name.symbol).defined)
             Lox.error(expr.name, "Variable cannot reference itself in initializer.");
-        resolveLocal(expr, expr.name);
+        expr.depth = depthOf(expr.name);
+        expr.slot = slotOf(expr.name, expr.depth);
+        if (expr.depth >= 0) {
+            int[] environment = environmentOf(expr.name.symbol, expr.depth);
+            expr.envDepth = environment[0];
+            expr.envSlot = environment[1];
+            Local local = localOf(expr.name.symbol, expr.depth);
+            local.reference(expr);
+            expr.declaration = local.declaration;
+        } else {
+            expr.global = Globals.indexOf(expr.name.symbol);
+        }
         return null;
     }
 
@@ -140,7 +484,10 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Cannot use 'this' inside a static method.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depthOf(expr.keyword);
+        int[] environment = environmentOf(Symbol.THIS, expr.depth);
+        expr.envDepth = environment[0];
+        expr.envSlot = environment[1];
         return null;
     }
 
@@ -189,22 +536,50 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword,
                     "Cannot use 'super' in a class with no superclass.");
 
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depthOf(expr.keyword);
+        if (currentClass != ClassType.SUBCLASS)
+            return null;
+        int[] environment = environmentOf(Symbol.SUPER, expr.depth);
+        expr.envDepth = environment[0];
+        expr.envSlot = environment[1];
+        // `this` is declared in the scope right inside the one of `super`
+        environment = environmentOf(Symbol.THIS, expr.depth - 1);
+        expr.thisDepth = environment[0];
+        expr.thisSlot = environment[1];
         return null;
     }
 
     @Override
     public Void visitLambdaExpr(Expr.Lambda expr) {
-        resolveFunction(new Stmt.Function(null, expr.parameters, expr.body, null),
-                FunctionType.FUNCTION);
+        List<Integer> boxed = new ArrayList<>();
+        beginClosure();
+        int[] slots = resolveFunction(expr.parameters, expr.body, FunctionType.FUNCTION, boxed);
+        expr.slots = slots[0];
+        expr.frameSlots = slots[1];
+        int[][] captures = endClosure();
+        expr.captureDepths = captures[0];
+        expr.captureSlots = captures[1];
+        expr.boxedParameters = boxedParameters(boxed);
+
+        // NOTE one declaration for all functions the lambda evaluates to, they share their profile in the JIT
+        expr.function = new Stmt.Function(null, expr.parameters, expr.body, new ArrayList<>());
+        expr.function.slots = expr.slots;
+        expr.function.frameSlots = expr.frameSlots;
+        expr.function.boxedParameters = expr.boxedParameters;
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        // NOTE inside a function the variables of a block live in the environment of the call
+        stmt.hoisted = !frames.isEmpty() && frames.peek().function;
+        if (!stmt.hoisted)
+            beginFrame(false);
         beginScope();
         resolve(stmt.stmts);
-        endScope();
+        stmt.slots = endScope();
+        if (!stmt.hoisted)
+            endFrame();
         return null;
     }
 
@@ -213,35 +588,49 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
+        stmt.envSlot = registerOf(stmt.name);
         define(stmt.name);
 
         if (stmt.superclass != null) {
-            if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme))
+            if (stmt.name.symbol == stmt.superclass.name.symbol)
                 Lox.error(stmt.superclass.name, "A class cannot inherit from itself.");
 
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
+        }
+
+        // NOTE the methods share the captured environment of their class
+        beginClosure();
+        if (stmt.superclass != null) {
+            beginFrame(false);
             beginScope();
-            scopes.peek().put("super", true);
+            defineImplicit(Symbol.SUPER);
         }
 
         beginScope();
-        scopes.peek().put("this", true);
+        declareThis();
 
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme.equals("init"))
+            if (method.name.symbol == Symbol.INIT)
                 declaration = FunctionType.INITIALIZER;
             if (method.qualifiers.contains(Qualifier.STATIC))
                 declaration = FunctionType.STATIC;
             resolveFunction(method, declaration);
         }
 
-        if (stmt.superclass != null)
+        // NOTE `this` has no slots of its own to release, see declareThis
+        scopes.pop();
+        if (stmt.superclass != null) {
             endScope();
+            endFrame();
+        }
 
-        endScope();
+        int[][] captures = endClosure();
+        stmt.captureDepths = captures[0];
+        stmt.captureSlots = captures[1];
+        initialize(stmt.name, () -> stmt.boxed = true);
         currentClass = enclosingClass;
 
         return null;
@@ -264,10 +653,14 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
+        stmt.envSlot = registerOf(stmt.name);
+        if (!scopes.isEmpty())
+            scopes.peek().get(stmt.name.symbol).declaration = stmt;
         if (stmt.initializer != null)
             resolve(stmt.initializer);
         define(stmt.name);
+        initialize(stmt.name, () -> stmt.boxed = true);
         return null;
     }
 
@@ -289,10 +682,16 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
+        stmt.envSlot = registerOf(stmt.name);
         define(stmt.name);
 
+        beginClosure();
         resolveFunction(stmt, FunctionType.FUNCTION);
+        int[][] captures = endClosure();
+        stmt.captureDepths = captures[0];
+        stmt.captureSlots = captures[1];
+        initialize(stmt.name, () -> stmt.boxed = true);
         return null;
     }
 
@@ -306,6 +705,8 @@ public class ResolverPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                 Lox.error(stmt.keyword, "Cannot 'return' a value from an initializer.");
 
             resolve(stmt.expr);
+            // NOTE the call is the last thing the function does, its frame is not needed anymore
+            stmt.tailCall = stmt.expr instanceof Expr.Call;
         }
         return null;
     }
@@ -3,8 +3,15 @@ package at.lagerfeuer.lox;
 public class RuntimeError extends RuntimeException {
     final Token token;
 
-    RuntimeError(Token token, String message) {
+    public RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
     }
+
+    /**
+     * Error message including the location, as printed when a script is aborted.
+     */
+    public String report() {
+        return String.format("[RuntimeError] %s:%d\t%s", token.filename, token.line, getMessage());
+    }
 }
@@ -0,0 +1,57 @@
+package at.lagerfeuer.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of the fields of a {@link LoxInstance}: which slot of its value array holds which field.
+ * <p>
+ * Instances start out with the empty shape of their class and follow a transition to a new shape whenever they get a
+ * new field. Instances that get the same fields in the same order, usually in the same initializer, end up sharing
+ * their shape. Shapes never change, a shape identifies the layout and (through its root) the class of an instance.
+ */
+final class Shape {
+    private static final Symbol[] NO_FIELDS = new Symbol[0];
+
+    // name of the field in each slot
+    private final Symbol[] fields;
+    // NOTE most shapes have a single transition, created lazily
+    private Map<Symbol, Shape> transitions = null;
+
+    Shape() {
+        this.fields = NO_FIELDS;
+    }
+
+    private Shape(Shape parent, Symbol name) {
+        this.fields = Arrays.copyOf(parent.fields, parent.size() + 1);
+        this.fields[parent.size()] = name;
+    }
+
+    int size() {
+        return fields.length;
+    }
+
+    /**
+     * @return slot of field `name`, -1 if this shape has no such field
+     */
+    int slot(Symbol name) {
+        // NOTE instances have few fields, comparing symbols is cheaper than hashing
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == name)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return shape with field `name` added as the last slot, this shape if it already has the field
+     */
+    Shape with(Symbol name) {
+        if (slot(name) >= 0)
+            return this;
+        if (transitions == null)
+            transitions = new HashMap<>(2);
+        return transitions.computeIfAbsent(name, field -> new Shape(this, field));
+    }
+}
@@ -0,0 +1,202 @@
+package at.lagerfeuer.lox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static at.lagerfeuer.lox.TokenType.*;
+
+/**
+ * Interned name of an identifier or keyword, every occurrence of a name shares the same symbol.
+ * <p>
+ * Symbols are compared by identity and hash to their id, maps keyed by symbols never compare strings. The
+ * {@link Lexer} looks up symbols directly in its window, the name of a symbol is only created the first time it is
+ * seen. Symbols are shared by all interpreters and never removed.
+ */
+public final class Symbol {
+    private static final Set<TokenType> KEYWORDS = EnumSet.range(NIL, STATIC);
+    // symbol of each keyword, indexed by the ordinal of its type
+    private static final Symbol[] KEYWORD_SYMBOLS = new Symbol[TokenType.values().length];
+
+    // open addressing, a lookup reads the table without locking, only adding a symbol locks
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static int count = 0;
+
+    public static final Symbol THIS;
+    public static final Symbol SUPER;
+    public static final Symbol INIT;
+
+    static {
+        for (TokenType keyword : KEYWORDS)
+            KEYWORD_SYMBOLS[keyword.ordinal()] = add(keyword.name().toLowerCase(Locale.ROOT), keyword);
+        THIS = intern("this");
+        SUPER = intern("super");
+        INIT = intern("init");
+    }
+
+    public final String name;
+    // dense, in the order the symbols have been interned
+    public final int id;
+    // IDENTIFIER, or the keyword the name stands for
+    final TokenType type;
+    private final int hash;
+    // index of the global variable with this name, see Globals.indexOf
+    int global = -1;
+
+    private Symbol(String name, int id, TokenType type) {
+        this.name = name;
+        this.id = id;
+        this.type = type;
+        this.hash = name.hashCode();
+    }
+
+    /**
+     * @return whether tokens of `type` have a symbol, i.e. identifiers and keywords
+     */
+    static boolean isName(TokenType type) {
+        return type == IDENTIFIER || KEYWORDS.contains(type);
+    }
+
+    /**
+     * @return symbol of the keyword `type`
+     */
+    static Symbol keyword(TokenType type) {
+        return KEYWORD_SYMBOLS[type.ordinal()];
+    }
+
+    public static Symbol intern(String name) {
+        int hash = name.hashCode();
+        Symbol[] table = Symbol.table;
+        int mask = table.length - 1;
+        for (int i = indexOf(hash, table); ; i = (i + 1) & mask) {
+            Symbol symbol = table[i];
+            if (symbol == null)
+                return add(name, IDENTIFIER);
+            if (symbol.hash == hash && symbol.name.equals(name))
+                return symbol;
+        }
+    }
+
+    /**
+     * Intern the name between `from` and `to` of `chars`.
+     */
+    static Symbol intern(char[] chars, int from, int to) {
+        // NOTE same hash as String.hashCode
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + chars[i];
+        return intern(chars, from, to, hash);
+    }
+
+    /**
+     * Same as {@link #intern(char[], int, int)} with the hash of the name already computed.
+     */
+    static Symbol intern(char[] chars, int from, int to, int hash) {
+        Symbol[] table = Symbol.table;
+        int mask = table.length - 1;
+        for (int i = indexOf(hash, table); ; i = (i + 1) & mask) {
+            Symbol symbol = table[i];
+            if (symbol == null)
+                return add(new String(chars, from, to - from), IDENTIFIER);
+            if (symbol.hash == hash && symbol.matches(chars, from, to))
+                return symbol;
+        }
+    }
+
+    /**
+     * Intern the name between `from` and `to` of `bytes`, which may only contain ASCII chars.
+     */
+    static Symbol intern(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + bytes[i];
+        return intern(bytes, from, to, hash);
+    }
+
+    /**
+     * Same as {@link #intern(byte[], int, int)} with the hash of the name already computed.
+     */
+    static Symbol intern(byte[] bytes, int from, int to, int hash) {
+        Symbol[] table = Symbol.table;
+        int mask = table.length - 1;
+        for (int i = indexOf(hash, table); ; i = (i + 1) & mask) {
+            Symbol symbol = table[i];
+            if (symbol == null)
+                return add(new String(bytes, from, to - from, StandardCharsets.US_ASCII), IDENTIFIER);
+            if (symbol.hash == hash && symbol.matches(bytes, from, to))
+                return symbol;
+        }
+    }
+
+    private boolean matches(char[] chars, int from, int to) {
+        if (name.length() != to - from)
+            return false;
+        for (int i = from; i < to; i++) {
+            if (name.charAt(i - from) != chars[i])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean matches(byte[] bytes, int from, int to) {
+        if (name.length() != to - from)
+            return false;
+        for (int i = from; i < to; i++) {
+            if (name.charAt(i - from) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static synchronized Symbol add(String name, TokenType type) {
+        // NOTE another thread may have added the name since the lookup
+        Symbol[] table = Symbol.table;
+        int mask = table.length - 1;
+        int i = indexOf(name.hashCode(), table);
+        for (; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].name.equals(name))
+                return table[i];
+        }
+
+        Symbol symbol = new Symbol(name, count++, type);
+        if (2 * count > table.length) {
+            Symbol[] grown = new Symbol[2 * table.length];
+            for (Symbol entry : table) {
+                if (entry != null)
+                    insert(grown, entry);
+            }
+            insert(grown, symbol);
+            Symbol.table = grown;
+        } else {
+            table[i] = symbol;
+        }
+        return symbol;
+    }
+
+    /**
+     * @return first slot of `table` to probe for `hash`
+     */
+    private static int indexOf(int hash, Symbol[] table) {
+        // NOTE names like a1, a2, ... have consecutive hashes, multiplying spreads them over the table
+        return (hash * 0x9e3779b9) >>> (Integer.numberOfLeadingZeros(table.length) + 1);
+    }
+
+    private static void insert(Symbol[] table, Symbol symbol) {
+        int mask = table.length - 1;
+        int i = indexOf(symbol.hash, table);
+        while (table[i] != null)
+            i = (i + 1) & mask;
+        table[i] = symbol;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
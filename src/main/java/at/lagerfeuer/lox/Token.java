@@ -8,6 +8,8 @@ public class Token {
     public final Object literal;
     public final int line;
     public final String filename;
+    // interned lexeme of identifiers and keywords, null for other tokens
+    public final Symbol symbol;
 
     /**
      * Constructor for tokens.
@@ -24,6 +26,19 @@ public class Token {
         this.literal = literal;
         this.line = line;
         this.filename = filename;
+        this.symbol = Symbol.isName(type) ? Symbol.intern(lexeme) : null;
+    }
+
+    /**
+     * Constructor for identifiers and keywords, shares the name of `symbol` as lexeme.
+     */
+    Token(TokenType type, Symbol symbol, String filename, int line) {
+        this.type = type;
+        this.lexeme = symbol.name;
+        this.literal = null;
+        this.line = line;
+        this.filename = filename;
+        this.symbol = symbol;
     }
 
     /**
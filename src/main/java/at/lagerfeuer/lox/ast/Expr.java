@@ -35,6 +35,14 @@ public abstract class Expr {
 
     public final Token name;
     public final Expr value;
+
+    // Set by ResolverPass and the interpreter
+    public int depth = -1;
+    public int slot = -1;
+    public int global = -1;
+    public int envDepth = -1;
+    public int envSlot = -1;
+    public boolean boxed = false;
   }
 
   public static class Binary extends Expr {
@@ -52,6 +60,9 @@ public abstract class Expr {
     public final Expr left;
     public final Token operator;
     public final Expr right;
+
+    // Set by ResolverPass and the interpreter
+    public boolean numeric = false;
   }
 
   public static class Grouping extends Expr {
@@ -110,6 +121,9 @@ public abstract class Expr {
 
     public final Expr object;
     public final Token name;
+
+    // Set by ResolverPass and the interpreter
+    public InlineCache cache = new InlineCache();
   }
 
   public static class Lambda extends Expr {
@@ -127,6 +141,14 @@ public abstract class Expr {
     public final Token token;
     public final List<Token> parameters;
     public final List<Stmt> body;
+
+    // Set by ResolverPass and the interpreter
+    public Stmt.Function function = null;
+    public int slots = 0;
+    public int frameSlots = 0;
+    public int[] captureDepths = null;
+    public int[] captureSlots = null;
+    public int[] boxedParameters = null;
   }
 
   public static class Literal extends Expr {
@@ -174,6 +196,9 @@ public abstract class Expr {
     public final Expr object;
     public final Token name;
     public final Expr value;
+
+    // Set by ResolverPass and the interpreter
+    public InlineCache cache = new InlineCache();
   }
 
   public static class Super extends Expr {
@@ -189,6 +214,13 @@ public abstract class Expr {
 
     public final Token keyword;
     public final Token method;
+
+    // Set by ResolverPass and the interpreter
+    public int depth = -1;
+    public int envDepth = -1;
+    public int envSlot = -1;
+    public int thisDepth = -1;
+    public int thisSlot = -1;
   }
 
   public static class Ternary extends Expr {
@@ -219,6 +251,11 @@ public abstract class Expr {
     }
 
     public final Token keyword;
+
+    // Set by ResolverPass and the interpreter
+    public int depth = -1;
+    public int envDepth = -1;
+    public int envSlot = -1;
   }
 
   public static class Unary extends Expr {
@@ -247,6 +284,15 @@ public abstract class Expr {
     }
 
     public final Token name;
+
+    // Set by ResolverPass and the interpreter
+    public Stmt.Var declaration = null;
+    public int depth = -1;
+    public int slot = -1;
+    public int global = -1;
+    public int envDepth = -1;
+    public int envSlot = -1;
+    public boolean boxed = false;
   }
 
 
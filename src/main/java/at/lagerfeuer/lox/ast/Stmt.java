@@ -40,6 +40,10 @@ public abstract class Stmt {
     }
 
     public final List<Stmt> stmts;
+
+    // Set by ResolverPass and the interpreter
+    public int slots = 0;
+    public boolean hoisted = false;
   }
 
   public static class Class extends Stmt {
@@ -57,6 +61,13 @@ public abstract class Stmt {
     public final Token name;
     public final Expr.Variable superclass;
     public final List<Stmt.Function> methods;
+
+    // Set by ResolverPass and the interpreter
+    public int slot = -1;
+    public int envSlot = -1;
+    public boolean boxed = false;
+    public int[] captureDepths = null;
+    public int[] captureSlots = null;
   }
 
   public static class Expression extends Stmt {
@@ -89,6 +100,18 @@ public abstract class Stmt {
     public final List<Token> parameters;
     public final List<Stmt> body;
     public final List<Qualifier> qualifiers;
+
+    // Set by ResolverPass and the interpreter
+    public Object profile = null;
+    public int slot = -1;
+    public int slots = 0;
+    public int envSlot = -1;
+    public int frameSlots = 0;
+    public int thisSlot = -1;
+    public boolean boxed = false;
+    public int[] captureDepths = null;
+    public int[] captureSlots = null;
+    public int[] boxedParameters = null;
   }
 
   public static class If extends Stmt {
@@ -121,6 +144,9 @@ public abstract class Stmt {
 
     public final Token keyword;
     public final Expr expr;
+
+    // Set by ResolverPass and the interpreter
+    public boolean tailCall = false;
   }
 
   public static class Var extends Stmt {
@@ -136,6 +162,12 @@ public abstract class Stmt {
 
     public final Token name;
     public final Expr initializer;
+
+    // Set by ResolverPass and the interpreter
+    public int slot = -1;
+    public int envSlot = -1;
+    public boolean boxed = false;
+    public boolean reassigned = false;
   }
 
   public static class While extends Stmt {
@@ -0,0 +1,19 @@
+package at.lagerfeuer.lox.jit;
+
+import at.lagerfeuer.lox.Environment;
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.LoxInstance;
+
+/**
+ * Body of a Lox function compiled to JVM bytecode by the {@link JitCompiler}.
+ */
+public interface CompiledFunction {
+    /**
+     * @param closure   environment the function was declared in
+     * @param receiver  `this` of a method call, ignored by functions
+     * @param arguments one value per parameter
+     * @return the value of the executed `return` statement, `nil`, or {@link Interpreter#TAIL_CALL} if the function
+     * ended in a tail call
+     */
+    Object call(Interpreter interpreter, Environment closure, LoxInstance receiver, Object[] arguments);
+}
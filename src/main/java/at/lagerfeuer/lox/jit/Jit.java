@@ -0,0 +1,98 @@
+package at.lagerfeuer.lox.jit;
+
+import at.lagerfeuer.lox.ast.Stmt;
+
+
+/**
+ * Compiles hot functions of the tree-walking {@link at.lagerfeuer.lox.Interpreter} to JVM bytecode.
+ * <p>
+ * Calls are counted per function declaration, so closures and bound methods created from the same declaration share
+ * their count and their compiled code. Once a declaration reached the threshold it is compiled once, functions the
+ * {@link JitCompiler} does not support keep running in the interpreter.
+ * <p>
+ * Every compiled class is defined by a class loader of its own, so it is unloaded together with the declaration it was
+ * compiled from.
+ */
+public final class Jit {
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    /**
+     * Call count and compiled code of a function declaration.
+     */
+    public static final class Profile {
+        private int calls = 0;
+        // set once the declaration was compiled successfully
+        private CompiledFunction code = null;
+
+        /**
+         * @return the compiled function, null if the declaration has not been compiled
+         */
+        public CompiledFunction compiled() {
+            return code;
+        }
+    }
+
+    /**
+     * Class loader of a single compiled function, a class can only be unloaded together with its loader.
+     */
+    private static final class FunctionLoader extends ClassLoader {
+        FunctionLoader() {
+            super(Jit.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name.replace('/', '.'), bytes, 0, bytes.length);
+        }
+    }
+
+    private final int threshold;
+
+    /**
+     * @param threshold number of calls after which a function is compiled, 0 disables compilation
+     */
+    public Jit(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * NOTE the profile is stored in the declaration, it goes away with the program that declared the function.
+     * The field is an Object so the AST does not depend on the JIT.
+     */
+    public Profile profile(Stmt.Function declaration) {
+        if (declaration.profile == null)
+            declaration.profile = new Profile();
+        return (Profile) declaration.profile;
+    }
+
+    /**
+     * Count a call of the function declared by `declaration`.
+     *
+     * @return the compiled function, null if the function has to be interpreted
+     */
+    public CompiledFunction enter(Profile profile, Stmt.Function declaration) {
+        if (profile.code != null || threshold <= 0)
+            return profile.code;
+        // stops counting after the first attempt, successful or not
+        if (++profile.calls == threshold)
+            profile.code = compile(declaration);
+        return profile.code;
+    }
+
+    private CompiledFunction compile(Stmt.Function declaration) {
+        // NOTE every class has its own loader, names only have to be unique per loader
+        String name = String.format("%s/Compiled$%s", JitCompiler.PACKAGE,
+                declaration.name != null ? declaration.name.lexeme : "lambda");
+        JitCompiler compiler = new JitCompiler(name);
+        byte[] bytes = compiler.compile(declaration);
+        if (bytes == null)
+            return null;
+
+        try {
+            Class<?> cls = new FunctionLoader().define(name, bytes);
+            return (CompiledFunction) cls.getConstructor(Object[].class)
+                    .newInstance((Object) compiler.constants());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load compiled function " + name, e);
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package at.lagerfeuer.lox.jit;
+
+import at.lagerfeuer.lox.Environment;
+import at.lagerfeuer.lox.InlineCache;
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.LoxFunction;
+import at.lagerfeuer.lox.LoxInstance;
+import at.lagerfeuer.lox.Token;
+import at.lagerfeuer.lox.TokenType;
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles the body of a function declaration to a class implementing {@link CompiledFunction}.
+ * <p>
+ * Locals of the function live in JVM locals instead of {@link Environment}s, which is only valid if no closure can
+ * capture them. Functions declaring functions, lambdas or classes, and functions using `super`, are therefore not
+ * supported and keep running in the interpreter. Variables of enclosing functions are read from the flat closure
+ * environment the {@link at.lagerfeuer.lox.ResolverPass} laid out.
+ * Operators are calls to {@link JitRuntime}, `break` and `return` are plain jumps.
+ */
+final class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    static final String PACKAGE = "at/lagerfeuer/lox/jit";
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String RUNTIME = Type.getInternalName(JitRuntime.class);
+    private static final String TOKEN = Type.getInternalName(Token.class);
+    private static final String INLINE_CACHE = Type.getInternalName(InlineCache.class);
+    private static final String FUNCTION = Type.getInternalName(LoxFunction.class);
+    private static final String CONSTANTS = "constants";
+
+    private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;";
+    private static final String COMPARISON = "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Z";
+    private static final String UNARY = "(Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;";
+
+    // JVM locals of the `call` method, Lox locals follow
+    private static final int THIS = 0;
+    private static final int INTERPRETER = 1;
+    private static final int CLOSURE = 2;
+    private static final int RECEIVER = 3;
+    private static final int ARGUMENTS = 4;
+
+    /**
+     * Thrown when the function uses a construct the compiler does not support.
+     */
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final String className;
+    private final List<Object> constants = new ArrayList<>();
+    private MethodVisitor mv;
+    // JVM local holding slot 0 of each scope of the function, innermost scope last
+    private final List<Integer> scopes = new ArrayList<>();
+    private int nextLocal = ARGUMENTS + 1;
+    // jump target of `break` for each enclosing loop, innermost first
+    private final Deque<Label> loopEnds = new ArrayDeque<>();
+
+    JitCompiler(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Values referenced by the compiled code, passed to the constructor of the compiled class.
+     */
+    Object[] constants() {
+        return constants.toArray();
+    }
+
+    /**
+     * @return the class file, null if the function uses unsupported constructs
+     */
+    byte[] compile(Stmt.Function function) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // all values are treated as Object, no need to load any classes
+                return OBJECT;
+            }
+        };
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, OBJECT,
+                new String[]{Type.getInternalName(CompiledFunction.class)});
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, CONSTANTS, "[Ljava/lang/Object;", null, null).visitEnd();
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, THIS);
+        init.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitVarInsn(ALOAD, THIS);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitFieldInsn(PUTFIELD, className, CONSTANTS, "[Ljava/lang/Object;");
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "call", Type.getMethodDescriptor(Type.getType(Object.class),
+                Type.getType(Interpreter.class), Type.getType(Environment.class), Type.getType(LoxInstance.class),
+                Type.getType(Object[].class)),
+                null, null);
+        mv.visitCode();
+        try {
+            // parameters occupy the first slots of the function scope
+            beginScope(function.slots);
+            for (int i = 0; i < function.parameters.size(); i++) {
+                mv.visitVarInsn(ALOAD, ARGUMENTS);
+                push(i);
+                mv.visitInsn(AALOAD);
+                mv.visitVarInsn(ASTORE, local(0, i));
+            }
+            for (Stmt stmt : function.body)
+                stmt.accept(this);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitInsn(ARETURN);
+            endScope(function.slots);
+
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            cw.visitEnd();
+            return cw.toByteArray();
+        } catch (RuntimeException e) {
+            // Unsupported, or ASM failed, e.g. because the method exceeds the size limit of the JVM
+            return null;
+        }
+    }
+
+    // helpers ----------------------------------------------------------------
+
+    private void beginScope(int slots) {
+        scopes.add(nextLocal);
+        // a scope starts out with all variables set to nil, just like a new Environment
+        for (int i = 0; i < slots; i++) {
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, nextLocal + i);
+        }
+        nextLocal += slots;
+    }
+
+    private void endScope(int slots) {
+        scopes.remove(scopes.size() - 1);
+        nextLocal -= slots;
+    }
+
+    /**
+     * @param depth resolved depth of a variable, relative to the current scope
+     * @return whether the variable belongs to a scope of the compiled function
+     */
+    private boolean isLocal(int depth) {
+        return depth < scopes.size();
+    }
+
+    private int local(int depth, int slot) {
+        return scopes.get(scopes.size() - 1 - depth) + slot;
+    }
+
+    /**
+     * @param envDepth resolved depth of a variable in the environments of the interpreter
+     * @return distance of the variable's environment from the closure of the compiled function
+     */
+    private int closureDistance(int envDepth) {
+        // all scopes of the function share the environment of the call, which is not created here
+        return envDepth - 1;
+    }
+
+    private void push(int value) {
+        if (value >= -1 && value <= 5)
+            mv.visitInsn(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            mv.visitIntInsn(BIPUSH, value);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            mv.visitIntInsn(SIPUSH, value);
+        else
+            mv.visitLdcInsn(value);
+    }
+
+    private void constant(Object value) {
+        constants.add(value);
+        mv.visitVarInsn(ALOAD, THIS);
+        mv.visitFieldInsn(GETFIELD, className, CONSTANTS, "[Ljava/lang/Object;");
+        push(constants.size() - 1);
+        mv.visitInsn(AALOAD);
+    }
+
+    private void token(Token token) {
+        constant(token);
+        mv.visitTypeInsn(CHECKCAST, TOKEN);
+    }
+
+    private void inlineCache(InlineCache cache) {
+        constant(cache);
+        mv.visitTypeInsn(CHECKCAST, INLINE_CACHE);
+    }
+
+    private void runtime(String name, String descriptor) {
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, name, descriptor, false);
+    }
+
+    private void evaluate(Expr expr) {
+        expr.accept(this);
+    }
+
+    /**
+     * Evaluate `expr` as a condition, leaves a boolean (int) instead of an object on the stack.
+     */
+    private void condition(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            condition(((Expr.Grouping) expr).expr);
+            return;
+        }
+
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            String comparison = null;
+            switch (binary.operator.type) {
+                case GREATER:
+                    comparison = "greater";
+                    break;
+                case GREATER_EQUAL:
+                    comparison = "greaterEqual";
+                    break;
+                case LESS:
+                    comparison = "less";
+                    break;
+                case LESS_EQUAL:
+                    comparison = "lessEqual";
+                    break;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    evaluate(binary.left);
+                    evaluate(binary.right);
+                    runtime("equal", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+                    if (binary.operator.type == TokenType.BANG_EQUAL) {
+                        mv.visitInsn(ICONST_1);
+                        mv.visitInsn(IXOR);
+                    }
+                    return;
+                default:
+                    break;
+            }
+            if (comparison != null) {
+                evaluate(binary.left);
+                evaluate(binary.right);
+                token(binary.operator);
+                runtime(comparison, COMPARISON);
+                return;
+            }
+        }
+
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            condition(((Expr.Unary) expr).right);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IXOR);
+            return;
+        }
+
+        if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            Label shortCircuit = new Label();
+            Label end = new Label();
+            boolean isAnd = logical.operator.type == TokenType.AND;
+            condition(logical.left);
+            mv.visitJumpInsn(isAnd ? IFEQ : IFNE, shortCircuit);
+            condition(logical.right);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(shortCircuit);
+            mv.visitInsn(isAnd ? ICONST_0 : ICONST_1);
+            mv.visitLabel(end);
+            return;
+        }
+
+        evaluate(expr);
+        runtime("isTruthy", "(Ljava/lang/Object;)Z");
+    }
+
+    private void box() {
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+    }
+
+    // expressions ------------------------------------------------------------
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        evaluate(expr.value);
+        if (expr.depth < 0) {
+            mv.visitVarInsn(ALOAD, INTERPRETER);
+            push(expr.global);
+            token(expr.name);
+            runtime("assignGlobal", "(Ljava/lang/Object;L" + Type.getInternalName(Interpreter.class) + ";IL"
+                    + TOKEN + ";)Ljava/lang/Object;");
+        } else if (isLocal(expr.depth)) {
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ASTORE, local(expr.depth, expr.slot));
+        } else {
+            mv.visitVarInsn(ALOAD, CLOSURE);
+            push(closureDistance(expr.envDepth));
+            push(expr.envSlot);
+            runtime(expr.boxed ? "assignBoxedAt" : "assignAt", "(Ljava/lang/Object;L"
+                    + Type.getInternalName(Environment.class) + ";II)Ljava/lang/Object;");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        String operation;
+        switch (expr.operator.type) {
+            case PLUS:
+                operation = "add";
+                break;
+            case MINUS:
+                operation = "subtract";
+                break;
+            case STAR:
+                operation = "multiply";
+                break;
+            case SLASH:
+                operation = "divide";
+                break;
+            default:
+                // comparisons and equality
+                condition(expr);
+                box();
+                return null;
+        }
+        evaluate(expr.left);
+        evaluate(expr.right);
+        token(expr.operator);
+        runtime(operation, BINARY);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        evaluate(expr.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            invoke(expr, (Expr.Get) expr.callee);
+            return null;
+        }
+
+        evaluate(expr.callee);
+        int count = expr.arguments.size();
+        if (count <= 4) {
+            // callN with the arguments as separate parameters, no array
+            StringBuilder descriptor = new StringBuilder("(Ljava/lang/Object;");
+            for (Expr argument : expr.arguments) {
+                evaluate(argument);
+                descriptor.append("Ljava/lang/Object;");
+            }
+            mv.visitVarInsn(ALOAD, INTERPRETER);
+            token(expr.paren);
+            descriptor.append("L").append(Type.getInternalName(Interpreter.class)).append(";L").append(TOKEN)
+                    .append(";)Ljava/lang/Object;");
+            runtime("call" + count, descriptor.toString());
+            return null;
+        }
+
+        arguments(expr.arguments);
+        mv.visitVarInsn(ALOAD, INTERPRETER);
+        token(expr.paren);
+        runtime("call", "(Ljava/lang/Object;[Ljava/lang/Object;L" + Type.getInternalName(Interpreter.class)
+                + ";L" + TOKEN + ";)Ljava/lang/Object;");
+        return null;
+    }
+
+    /**
+     * Call `object.name(...)` without a bound method, with the arguments as separate parameters up to four.
+     */
+    private void invoke(Expr.Call expr, Expr.Get callee) {
+        method(callee);
+        int count = expr.arguments.size();
+        if (count > 4) {
+            arguments(expr.arguments);
+            mv.visitVarInsn(ALOAD, INTERPRETER);
+            token(expr.paren);
+            runtime("invoke", "(Ljava/lang/Object;L" + FUNCTION + ";[Ljava/lang/Object;L"
+                    + Type.getInternalName(Interpreter.class) + ";L" + TOKEN + ";)Ljava/lang/Object;");
+            return;
+        }
+
+        StringBuilder descriptor = new StringBuilder("(Ljava/lang/Object;L" + FUNCTION + ";");
+        for (Expr argument : expr.arguments) {
+            evaluate(argument);
+            descriptor.append("Ljava/lang/Object;");
+        }
+        mv.visitVarInsn(ALOAD, INTERPRETER);
+        token(expr.paren);
+        descriptor.append("L").append(Type.getInternalName(Interpreter.class)).append(";L").append(TOKEN)
+                .append(";)Ljava/lang/Object;");
+        runtime("invoke" + count, descriptor.toString());
+    }
+
+    /**
+     * First half of `object.name(...)`, leaves the receiver and the method on the stack while the arguments are
+     * evaluated, or the property value and null if it is not a method.
+     */
+    private void method(Expr.Get callee) {
+        evaluate(callee.object);
+        mv.visitInsn(DUP);
+        token(callee.name);
+        inlineCache(callee.cache);
+        runtime("method", "(Ljava/lang/Object;L" + TOKEN + ";L" + INLINE_CACHE + ";)L" + FUNCTION + ";");
+
+        Label method = new Label();
+        mv.visitInsn(DUP);
+        mv.visitJumpInsn(IFNONNULL, method);
+        mv.visitInsn(POP);
+        token(callee.name);
+        inlineCache(callee.cache);
+        runtime("get", "(Ljava/lang/Object;L" + TOKEN + ";L" + INLINE_CACHE + ";)Ljava/lang/Object;");
+        mv.visitInsn(ACONST_NULL);
+        mv.visitLabel(method);
+    }
+
+    private void arguments(List<Expr> arguments) {
+        push(arguments.size());
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        for (int i = 0; i < arguments.size(); i++) {
+            mv.visitInsn(DUP);
+            push(i);
+            evaluate(arguments.get(i));
+            mv.visitInsn(AASTORE);
+        }
+    }
+
+    @Override
+    public Void visitCommaExpr(Expr.Comma expr) {
+        for (int i = 0; i < expr.exprs.size(); i++) {
+            evaluate(expr.exprs.get(i));
+            if (i < expr.exprs.size() - 1)
+                mv.visitInsn(POP);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        evaluate(expr.object);
+        token(expr.name);
+        inlineCache(expr.cache);
+        runtime("get", "(Ljava/lang/Object;L" + TOKEN + ";L" + INLINE_CACHE + ";)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            mv.visitInsn(ACONST_NULL);
+        else if (expr.value instanceof Boolean)
+            mv.visitFieldInsn(GETSTATIC, "java/lang/Boolean", (boolean) expr.value ? "TRUE" : "FALSE",
+                    "Ljava/lang/Boolean;");
+        else if (expr.value instanceof String)
+            mv.visitLdcInsn(expr.value);
+        else
+            // numbers are boxed once at compile time
+            constant(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        Label end = new Label();
+        evaluate(expr.left);
+        mv.visitInsn(DUP);
+        runtime("isTruthy", "(Ljava/lang/Object;)Z");
+        mv.visitJumpInsn(expr.operator.type == TokenType.AND ? IFEQ : IFNE, end);
+        mv.visitInsn(POP);
+        evaluate(expr.right);
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        evaluate(expr.object);
+        token(expr.name);
+        runtime("checkInstance", UNARY);
+        evaluate(expr.value);
+        token(expr.name);
+        inlineCache(expr.cache);
+        runtime("set", "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";L" + INLINE_CACHE + ";)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        Label elseBranch = new Label();
+        Label end = new Label();
+        condition(expr.condition);
+        mv.visitJumpInsn(IFEQ, elseBranch);
+        evaluate(expr.thenBranch);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(elseBranch);
+        evaluate(expr.elseBranch);
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        // NOTE `this` of the compiled method itself is passed in, `this` of an enclosing method was captured
+        if (expr.envDepth == 0) {
+            mv.visitVarInsn(ALOAD, RECEIVER);
+            return null;
+        }
+        mv.visitVarInsn(ALOAD, CLOSURE);
+        push(closureDistance(expr.envDepth));
+        push(expr.envSlot);
+        runtime("getAt", "(L" + Type.getInternalName(Environment.class) + ";II)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) {
+            condition(expr);
+            box();
+            return null;
+        }
+        evaluate(expr.right);
+        token(expr.operator);
+        runtime("negate", UNARY);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            mv.visitVarInsn(ALOAD, INTERPRETER);
+            push(expr.global);
+            token(expr.name);
+            runtime("getGlobal", "(L" + Type.getInternalName(Interpreter.class) + ";IL" + TOKEN
+                    + ";)Ljava/lang/Object;");
+        } else if (isLocal(expr.depth)) {
+            mv.visitVarInsn(ALOAD, local(expr.depth, expr.slot));
+        } else {
+            mv.visitVarInsn(ALOAD, CLOSURE);
+            push(closureDistance(expr.envDepth));
+            push(expr.envSlot);
+            runtime(expr.boxed ? "getBoxedAt" : "getAt",
+                    "(L" + Type.getInternalName(Environment.class) + ";II)Ljava/lang/Object;");
+        }
+        return null;
+    }
+
+    // statements -------------------------------------------------------------
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope(stmt.slots);
+        for (Stmt s : stmt.stmts)
+            s.accept(this);
+        endScope(stmt.slots);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        mv.visitJumpInsn(GOTO, loopEnds.peek());
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expr);
+        mv.visitInsn(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Label elseBranch = new Label();
+        Label end = new Label();
+        condition(stmt.condition);
+        mv.visitJumpInsn(IFEQ, elseBranch);
+        stmt.thenBranch.accept(this);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(elseBranch);
+        if (stmt.elseBranch != null)
+            stmt.elseBranch.accept(this);
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            // the caller of the compiled function makes the call, see Interpreter.tailCall
+            Expr.Call call = (Expr.Call) stmt.expr;
+            if (call.callee instanceof Expr.Get) {
+                method((Expr.Get) call.callee);
+                arguments(call.arguments);
+                mv.visitVarInsn(ALOAD, INTERPRETER);
+                token(call.paren);
+                runtime("tailInvoke", "(Ljava/lang/Object;L" + FUNCTION + ";[Ljava/lang/Object;L"
+                        + Type.getInternalName(Interpreter.class) + ";L" + TOKEN + ";)Ljava/lang/Object;");
+            } else {
+                evaluate(call.callee);
+                arguments(call.arguments);
+                mv.visitVarInsn(ALOAD, INTERPRETER);
+                token(call.paren);
+                runtime("tailCall", "(Ljava/lang/Object;[Ljava/lang/Object;L" + Type.getInternalName(Interpreter.class)
+                        + ";L" + TOKEN + ";)Ljava/lang/Object;");
+            }
+            mv.visitInsn(ARETURN);
+            return null;
+        }
+
+        if (stmt.expr != null)
+            evaluate(stmt.expr);
+        else
+            mv.visitInsn(ACONST_NULL);
+        mv.visitInsn(ARETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null)
+            evaluate(stmt.initializer);
+        else
+            mv.visitInsn(ACONST_NULL);
+        mv.visitVarInsn(ASTORE, local(0, stmt.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Label start = new Label();
+        Label end = new Label();
+        mv.visitLabel(start);
+        condition(stmt.condition);
+        mv.visitJumpInsn(IFEQ, end);
+        loopEnds.push(end);
+        stmt.body.accept(this);
+        loopEnds.pop();
+        mv.visitJumpInsn(GOTO, start);
+        mv.visitLabel(end);
+        return null;
+    }
+}
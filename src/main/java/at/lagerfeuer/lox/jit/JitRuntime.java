@@ -0,0 +1,247 @@
+package at.lagerfeuer.lox.jit;
+
+import at.lagerfeuer.lox.Box;
+import at.lagerfeuer.lox.Environment;
+import at.lagerfeuer.lox.InlineCache;
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.LoxFunction;
+import at.lagerfeuer.lox.LoxInstance;
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+import java.util.Objects;
+
+/**
+ * Operations called by compiled functions.
+ * <p>
+ * Every method implements exactly one operation of the {@link Interpreter} with the same checks and error messages.
+ * The methods are small so HotSpot inlines them into the compiled function.
+ */
+public final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    public static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double)
+            return Interpreter.box((double) left + (double) right);
+        if (left instanceof String || right instanceof String)
+            return Interpreter.stringify(left) + Interpreter.stringify(right);
+        throw new RuntimeError(operator, "Expecting operands to be numbers or strings.");
+    }
+
+    private static void checkNumberOperands(Object left, Object right, Token operator) {
+        if (!(left instanceof Double && right instanceof Double))
+            throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    public static Object subtract(Object left, Object right, Token operator) {
+        checkNumberOperands(left, right, operator);
+        return Interpreter.box((double) left - (double) right);
+    }
+
+    public static Object multiply(Object left, Object right, Token operator) {
+        checkNumberOperands(left, right, operator);
+        return Interpreter.box((double) left * (double) right);
+    }
+
+    public static Object divide(Object left, Object right, Token operator) {
+        checkNumberOperands(left, right, operator);
+        if ((double) right == 0)
+            throw new RuntimeError(operator, "Division by 0");
+        return Interpreter.box((double) left / (double) right);
+    }
+
+    public static Object negate(Object right, Token operator) {
+        if (!(right instanceof Double))
+            throw new RuntimeError(operator, "Operand must be a number.");
+        return Interpreter.box(-(double) right);
+    }
+
+    /**
+     * Compare two strings, numbers are compared by the callers.
+     */
+    private static int compareStrings(Object left, Object right, Token operator) {
+        if (left instanceof String && right instanceof String)
+            return ((String) left).compareTo((String) right);
+        throw new RuntimeError(operator, "Operands must be numbers or strings.");
+    }
+
+    public static boolean greater(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double)
+            return (double) left > (double) right;
+        return compareStrings(left, right, operator) > 0;
+    }
+
+    public static boolean greaterEqual(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double)
+            return (double) left >= (double) right;
+        return compareStrings(left, right, operator) >= 0;
+    }
+
+    public static boolean less(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double)
+            return (double) left < (double) right;
+        return compareStrings(left, right, operator) < 0;
+    }
+
+    public static boolean lessEqual(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double)
+            return (double) left <= (double) right;
+        return compareStrings(left, right, operator) <= 0;
+    }
+
+    public static boolean equal(Object left, Object right) {
+        return Objects.equals(left, right);
+    }
+
+    public static boolean isTruthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    public static Object getGlobal(Interpreter interpreter, int index, Token name) {
+        return interpreter.globals.get(index, name);
+    }
+
+    public static Object assignGlobal(Object value, Interpreter interpreter, int index, Token name) {
+        interpreter.globals.assign(index, name, value);
+        return value;
+    }
+
+    public static Object getAt(Environment closure, int distance, int slot) {
+        return closure.getAt(distance, slot);
+    }
+
+    public static Object assignAt(Object value, Environment closure, int distance, int slot) {
+        closure.assignAt(distance, slot, value);
+        return value;
+    }
+
+    public static Object getBoxedAt(Environment closure, int distance, int slot) {
+        return ((Box) closure.getAt(distance, slot)).value;
+    }
+
+    public static Object assignBoxedAt(Object value, Environment closure, int distance, int slot) {
+        ((Box) closure.getAt(distance, slot)).value = value;
+        return value;
+    }
+
+    public static Object call(Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        return Interpreter.callable(callee, arguments.length, paren).call(interpreter, arguments);
+    }
+
+    public static Object call0(Object callee, Interpreter interpreter, Token paren) {
+        return Interpreter.callable(callee, 0, paren).call0(interpreter);
+    }
+
+    public static Object call1(Object callee, Object a, Interpreter interpreter, Token paren) {
+        return Interpreter.callable(callee, 1, paren).call1(interpreter, a);
+    }
+
+    public static Object call2(Object callee, Object a, Object b, Interpreter interpreter, Token paren) {
+        return Interpreter.callable(callee, 2, paren).call2(interpreter, a, b);
+    }
+
+    public static Object call3(Object callee, Object a, Object b, Object c, Interpreter interpreter, Token paren) {
+        return Interpreter.callable(callee, 3, paren).call3(interpreter, a, b, c);
+    }
+
+    public static Object call4(Object callee, Object a, Object b, Object c, Object d, Interpreter interpreter,
+                               Token paren) {
+        return Interpreter.callable(callee, 4, paren).call4(interpreter, a, b, c, d);
+    }
+
+    /**
+     * First half of a call `object.name(...)`, the method to invoke on `object` once the arguments are evaluated.
+     *
+     * @return null if the property is not a method
+     */
+    public static LoxFunction method(Object object, Token name, InlineCache cache) {
+        if (object instanceof LoxInstance)
+            return ((LoxInstance) object).method(name, cache);
+
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    /**
+     * Second half of a call `object.name(...)`, calls `callee` if there is no method.
+     */
+    public static Object invoke(Object callee, LoxFunction method, Object[] arguments, Interpreter interpreter,
+                                Token paren) {
+        if (method == null)
+            return call(callee, arguments, interpreter, paren);
+        return Interpreter.checkArity(method, arguments.length, paren).invoke(interpreter, (LoxInstance) callee,
+                arguments);
+    }
+
+    public static Object invoke0(Object callee, LoxFunction method, Interpreter interpreter, Token paren) {
+        if (method == null)
+            return call0(callee, interpreter, paren);
+        return Interpreter.checkArity(method, 0, paren).invoke0(interpreter, (LoxInstance) callee);
+    }
+
+    public static Object invoke1(Object callee, LoxFunction method, Object a, Interpreter interpreter, Token paren) {
+        if (method == null)
+            return call1(callee, a, interpreter, paren);
+        return Interpreter.checkArity(method, 1, paren).invoke1(interpreter, (LoxInstance) callee, a);
+    }
+
+    public static Object invoke2(Object callee, LoxFunction method, Object a, Object b, Interpreter interpreter,
+                                 Token paren) {
+        if (method == null)
+            return call2(callee, a, b, interpreter, paren);
+        return Interpreter.checkArity(method, 2, paren).invoke2(interpreter, (LoxInstance) callee, a, b);
+    }
+
+    public static Object invoke3(Object callee, LoxFunction method, Object a, Object b, Object c,
+                                 Interpreter interpreter, Token paren) {
+        if (method == null)
+            return call3(callee, a, b, c, interpreter, paren);
+        return Interpreter.checkArity(method, 3, paren).invoke3(interpreter, (LoxInstance) callee, a, b, c);
+    }
+
+    public static Object invoke4(Object callee, LoxFunction method, Object a, Object b, Object c, Object d,
+                                 Interpreter interpreter, Token paren) {
+        if (method == null)
+            return call4(callee, a, b, c, d, interpreter, paren);
+        return Interpreter.checkArity(method, 4, paren).invoke4(interpreter, (LoxInstance) callee, a, b, c, d);
+    }
+
+    /**
+     * `return callee(...)`, see {@link Interpreter#tailCall}.
+     */
+    public static Object tailCall(Object callee, Object[] arguments, Interpreter interpreter, Token paren) {
+        return interpreter.tailCall(Interpreter.callable(callee, arguments.length, paren), null, arguments);
+    }
+
+    /**
+     * `return object.name(...)`, the tail call version of {@link #invoke}.
+     */
+    public static Object tailInvoke(Object callee, LoxFunction method, Object[] arguments, Interpreter interpreter,
+                                    Token paren) {
+        if (method == null)
+            return tailCall(callee, arguments, interpreter, paren);
+        return interpreter.tailCall(Interpreter.checkArity(method, arguments.length, paren), (LoxInstance) callee,
+                arguments);
+    }
+
+    public static Object get(Object object, Token name, InlineCache cache) {
+        if (object instanceof LoxInstance)
+            return ((LoxInstance) object).get(name, cache);
+
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    /**
+     * Check the object of a property assignment before the value is evaluated.
+     */
+    public static Object checkInstance(Object object, Token name) {
+        if (!(object instanceof LoxInstance))
+            throw new RuntimeError(name, "Only instances have fields.");
+        return object;
+    }
+
+    public static Object set(Object object, Object value, Token name, InlineCache cache) {
+        ((LoxInstance) object).set(name, value, cache);
+        return value;
+    }
+}
@@ -0,0 +1,405 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+import at.lagerfeuer.lox.TokenType;
+
+import java.util.Objects;
+
+/**
+ * Operators.
+ * <p>
+ * `+` and the comparison operators start out uninitialized and specialize themselves on the operand types seen in
+ * their first execution. A specialized node falls back to the generic version once it sees other operand types.
+ * `-`, `*`, `/` and unary `-` are only defined for numbers and always use unboxed arithmetic.
+ */
+final class ArithmeticNodes {
+    private ArithmeticNodes() {
+    }
+
+    abstract static class BinaryNode extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+        final Token operator;
+
+        BinaryNode(ExprNode left, ExprNode right, Token operator) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+            this.operator = operator;
+        }
+    }
+
+    /**
+     * Box the result of a type-specialized execute method.
+     */
+    abstract static class DoubleNode extends BinaryNode {
+        DoubleNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        final Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        abstract double executeDouble(Frame frame) throws UnexpectedResultException;
+    }
+
+    // `+` --------------------------------------------------------------------
+
+    static final class AddUninitializedNode extends BinaryNode {
+        AddUninitializedNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (l instanceof Double && r instanceof Double)
+                replace(new AddDoubleNode(left, right, operator));
+            else if (l instanceof String && r instanceof String)
+                replace(new AddStringNode(left, right, operator));
+            else
+                replace(new AddGenericNode(left, right, operator));
+            return AddGenericNode.add(operator, l, r);
+        }
+    }
+
+    static final class AddDoubleNode extends DoubleNode {
+        AddDoubleNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return l + right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(l, e.result);
+            }
+        }
+
+        private double generalize(Object l, Object r) throws UnexpectedResultException {
+            replace(new AddGenericNode(left, right, operator));
+            Object result = AddGenericNode.add(operator, l, r);
+            if (result instanceof Double)
+                return (double) result;
+            throw new UnexpectedResultException(result);
+        }
+    }
+
+    static final class AddStringNode extends BinaryNode {
+        AddStringNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (l instanceof String && r instanceof String)
+                return (String) l + r;
+            replace(new AddGenericNode(left, right, operator));
+            return AddGenericNode.add(operator, l, r);
+        }
+    }
+
+    static final class AddGenericNode extends BinaryNode {
+        AddGenericNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        static Object add(Token operator, Object l, Object r) {
+            if (l instanceof Double && r instanceof Double)
+                return (double) l + (double) r;
+            if (l instanceof String || r instanceof String)
+                return Interpreter.stringify(l) + Interpreter.stringify(r);
+            throw new RuntimeError(operator, "Expecting operands to be numbers or strings.");
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object l = left.execute(frame);
+            return add(operator, l, right.execute(frame));
+        }
+    }
+
+    // `-`, `*`, `/` ----------------------------------------------------------
+
+    /**
+     * Evaluate the right operand of a numeric operator whose left operand is not a number, then fail.
+     */
+    private static RuntimeError numberOperandsError(BinaryNode node, Frame frame) {
+        node.right.execute(frame);
+        return new RuntimeError(node.operator, "Operands must be numbers.");
+    }
+
+    static final class SubtractNode extends DoubleNode {
+        SubtractNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw numberOperandsError(this, frame);
+            }
+            try {
+                return l - right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operands must be numbers.");
+            }
+        }
+    }
+
+    static final class MultiplyNode extends DoubleNode {
+        MultiplyNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw numberOperandsError(this, frame);
+            }
+            try {
+                return l * right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operands must be numbers.");
+            }
+        }
+    }
+
+    static final class DivideNode extends DoubleNode {
+        DivideNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw numberOperandsError(this, frame);
+            }
+            double r;
+            try {
+                r = right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operands must be numbers.");
+            }
+            if (r == 0)
+                throw new RuntimeError(operator, "Division by 0");
+            return l / r;
+        }
+    }
+
+    // `<`, `<=`, `>`, `>=` ---------------------------------------------------
+
+    private static boolean compare(TokenType type, double l, double r) {
+        switch (type) {
+            case GREATER:
+                return l > r;
+            case GREATER_EQUAL:
+                return l >= r;
+            case LESS:
+                return l < r;
+            default:
+                return l <= r;
+        }
+    }
+
+    private static boolean compare(TokenType type, int cmp) {
+        switch (type) {
+            case GREATER:
+                return cmp > 0;
+            case GREATER_EQUAL:
+                return cmp >= 0;
+            case LESS:
+                return cmp < 0;
+            default:
+                return cmp <= 0;
+        }
+    }
+
+    abstract static class CompareNode extends BinaryNode {
+        CompareNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        static boolean compare(Token operator, Object l, Object r) {
+            if (l instanceof Double && r instanceof Double)
+                return ArithmeticNodes.compare(operator.type, (double) l, (double) r);
+            if (l instanceof String && r instanceof String)
+                return ArithmeticNodes.compare(operator.type, ((String) l).compareTo((String) r));
+            throw new RuntimeError(operator, "Operands must be numbers or strings.");
+        }
+
+        @Override
+        final Object execute(Frame frame) {
+            return executeCondition(frame);
+        }
+
+        @Override
+        abstract boolean executeCondition(Frame frame);
+    }
+
+    static final class CompareUninitializedNode extends CompareNode {
+        CompareUninitializedNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (l instanceof Double && r instanceof Double)
+                replace(new CompareDoubleNode(left, right, operator));
+            else if (l instanceof String && r instanceof String)
+                replace(new CompareStringNode(left, right, operator));
+            else
+                replace(new CompareGenericNode(left, right, operator));
+            return compare(operator, l, r);
+        }
+    }
+
+    static final class CompareDoubleNode extends CompareNode {
+        CompareDoubleNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return ArithmeticNodes.compare(operator.type, l, right.executeDouble(frame));
+            } catch (UnexpectedResultException e) {
+                return generalize(l, e.result);
+            }
+        }
+
+        private boolean generalize(Object l, Object r) {
+            replace(new CompareGenericNode(left, right, operator));
+            return compare(operator, l, r);
+        }
+    }
+
+    static final class CompareStringNode extends CompareNode {
+        CompareStringNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (l instanceof String && r instanceof String)
+                return ArithmeticNodes.compare(operator.type, ((String) l).compareTo((String) r));
+            replace(new CompareGenericNode(left, right, operator));
+            return compare(operator, l, r);
+        }
+    }
+
+    static final class CompareGenericNode extends CompareNode {
+        CompareGenericNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            Object l = left.execute(frame);
+            return compare(operator, l, right.execute(frame));
+        }
+    }
+
+    // `==`, `!=` -------------------------------------------------------------
+
+    static final class EqualNode extends BinaryNode {
+        private final boolean negate;
+
+        EqualNode(ExprNode left, ExprNode right, Token operator) {
+            super(left, right, operator);
+            this.negate = operator.type == TokenType.BANG_EQUAL;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeCondition(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            Object l = left.execute(frame);
+            return Objects.equals(l, right.execute(frame)) != negate;
+        }
+    }
+
+    // unary ------------------------------------------------------------------
+
+    static final class NegateNode extends ExprNode {
+        ExprNode right;
+        private final Token operator;
+
+        NegateNode(ExprNode right, Token operator) {
+            this.right = adopt(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            try {
+                return -right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number.");
+            }
+        }
+    }
+
+    static final class NotNode extends ExprNode {
+        ExprNode right;
+
+        NotNode(ExprNode right) {
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeCondition(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            return !right.executeCondition(frame);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package at.lagerfeuer.lox.nodes;
+
+final class BreakException extends RuntimeException {
+    static final BreakException INSTANCE = new BreakException();
+
+    private BreakException() {
+        super(null, null, false, false);
+    }
+}
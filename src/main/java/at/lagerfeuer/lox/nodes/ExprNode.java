@@ -0,0 +1,26 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.Interpreter;
+
+abstract class ExprNode extends Node {
+    abstract Object execute(Frame frame);
+
+    /**
+     * Evaluate to an unboxed number.
+     *
+     * @throws UnexpectedResultException if the value is not a number
+     */
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double)
+            return (double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    /**
+     * Evaluate as condition of an `if`, `while` or ternary expression.
+     */
+    boolean executeCondition(Frame frame) {
+        return Interpreter.isTruthy(execute(frame));
+    }
+}
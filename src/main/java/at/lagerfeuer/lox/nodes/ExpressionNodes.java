@@ -0,0 +1,132 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.Interpreter;
+
+/**
+ * Literals and expressions that only decide which operand to evaluate.
+ */
+final class ExpressionNodes {
+    private ExpressionNodes() {
+    }
+
+    static ExprNode literal(Object value) {
+        if (value instanceof Double)
+            return new DoubleLiteralNode((double) value);
+        return new LiteralNode(value);
+    }
+
+    static final class LiteralNode extends ExprNode {
+        private final Object value;
+
+        LiteralNode(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class DoubleLiteralNode extends ExprNode {
+        private final double value;
+        // boxed once, so the generic path does not allocate
+        private final Object boxed;
+
+        DoubleLiteralNode(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class AndNode extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+
+        AndNode(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = left.execute(frame);
+            if (!Interpreter.isTruthy(value))
+                return value;
+            return right.execute(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            return left.executeCondition(frame) && right.executeCondition(frame);
+        }
+    }
+
+    static final class OrNode extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+
+        OrNode(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = left.execute(frame);
+            if (Interpreter.isTruthy(value))
+                return value;
+            return right.execute(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            return left.executeCondition(frame) || right.executeCondition(frame);
+        }
+    }
+
+    static final class TernaryNode extends ExprNode {
+        ExprNode condition;
+        ExprNode thenBranch;
+        ExprNode elseBranch;
+
+        TernaryNode(ExprNode condition, ExprNode thenBranch, ExprNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (condition.executeCondition(frame))
+                return thenBranch.execute(frame);
+            return elseBranch.execute(frame);
+        }
+    }
+
+    static final class CommaNode extends ExprNode {
+        ExprNode[] exprs;
+
+        CommaNode(ExprNode[] exprs) {
+            this.exprs = adopt(exprs);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object last = null;
+            for (ExprNode expr : exprs)
+                last = expr.execute(frame);
+            return last;
+        }
+    }
+}
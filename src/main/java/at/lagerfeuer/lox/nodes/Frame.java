@@ -0,0 +1,21 @@
+package at.lagerfeuer.lox.nodes;
+
+/**
+ * Local variables of a scope, laid out like {@link at.lagerfeuer.lox.Environment}.
+ */
+final class Frame {
+    final Object[] slots;
+    final Frame parent;
+
+    Frame(Frame parent, int size) {
+        this.parent = parent;
+        this.slots = new Object[size];
+    }
+
+    Frame ancestor(int depth) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++)
+            frame = frame.parent;
+        return frame;
+    }
+}
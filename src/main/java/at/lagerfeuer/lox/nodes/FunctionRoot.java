@@ -0,0 +1,23 @@
+package at.lagerfeuer.lox.nodes;
+
+/**
+ * Executable body of a function or lambda, shared by all closures created from the same declaration.
+ * Specializations of the body nodes therefore apply to every closure.
+ */
+final class FunctionRoot extends Node {
+    // null for lambdas
+    final String name;
+    final int arity;
+    // size of the frame, parameters occupy the first slots
+    final int slots;
+    final boolean isInitializer;
+    StmtNode[] body;
+
+    FunctionRoot(String name, int arity, int slots, boolean isInitializer, StmtNode[] body) {
+        this.name = name;
+        this.arity = arity;
+        this.slots = slots;
+        this.isInitializer = isInitializer;
+        this.body = adopt(body);
+    }
+}
@@ -0,0 +1,109 @@
+package at.lagerfeuer.lox.nodes;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class of all executable nodes.
+ * <p>
+ * Nodes may rewrite themselves into a more specialized (or more generic) version with {@link #replace(Node)}.
+ * Children are plain fields of type {@link Node} or {@link Node}[], the parent finds them by reflection, which is
+ * fine because a node is only rewritten a few times.
+ */
+abstract class Node {
+    private Node parent = null;
+
+    /**
+     * Make this node the parent of `child`, used by constructors for all child nodes.
+     */
+    final <T extends Node> T adopt(T child) {
+        if (child != null)
+            ((Node) child).parent = this;
+        return child;
+    }
+
+    final <T extends Node> T[] adopt(T[] children) {
+        for (T child : children)
+            adopt(child);
+        return children;
+    }
+
+    /**
+     * Replace this node in its parent.
+     * <p>
+     * A recursive call may have executed and rewritten this node already while it was still running, in that case
+     * the first rewrite wins and this one is dropped. The dropped replacement adopted the children it shares with the
+     * winner, so the subtree of the parent is adopted again.
+     *
+     * @return the replacement
+     */
+    final <T extends Node> T replace(T replacement) {
+        if (parent == null)
+            throw new IllegalStateException("Cannot replace a root node");
+        if (parent.replaceChild(this, replacement))
+            ((Node) replacement).parent = parent;
+        else
+            parent.adoptTree();
+        return replacement;
+    }
+
+    private void adoptTree() {
+        for (Node child : children()) {
+            child.parent = this;
+            child.adoptTree();
+        }
+    }
+
+    private List<Node> children() {
+        List<Node> children = new ArrayList<>();
+        try {
+            for (Class<?> cls = getClass(); cls != Node.class; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+                    field.setAccessible(true);
+                    Object value = field.get(this);
+                    if (value instanceof Node)
+                        children.add((Node) value);
+                    else if (value instanceof Node[])
+                        for (Node child : (Node[]) value)
+                            if (child != null)
+                                children.add(child);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return children;
+    }
+
+    private boolean replaceChild(Node child, Node replacement) {
+        try {
+            for (Class<?> cls = getClass(); cls != Node.class; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+                    field.setAccessible(true);
+                    Object value = field.get(this);
+                    if (value == child) {
+                        field.set(this, replacement);
+                        return true;
+                    }
+                    if (value instanceof Node[]) {
+                        Node[] children = (Node[]) value;
+                        for (int i = 0; i < children.length; i++)
+                            if (children[i] == child) {
+                                children[i] = replacement;
+                                return true;
+                            }
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,7 @@
+package at.lagerfeuer.lox.nodes;
+
+interface NodeCallable {
+    int arity();
+
+    Object call(Object[] arguments);
+}
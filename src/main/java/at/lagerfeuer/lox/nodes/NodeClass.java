@@ -0,0 +1,59 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class NodeClass extends NodeInstance implements NodeCallable {
+    final String name;
+    final NodeClass superclass;
+    // methods of this class and all its superclasses
+    private final Map<String, NodeFunction> methods;
+
+    NodeClass(String name, NodeClass superclass, Map<String, NodeFunction> methods) {
+        super(null);
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = new HashMap<>();
+        if (superclass != null)
+            this.methods.putAll(superclass.methods);
+        this.methods.putAll(methods);
+    }
+
+    NodeFunction findMethod(String name) {
+        return methods.get(name);
+    }
+
+    @Override
+    public int arity() {
+        NodeFunction initializer = findMethod("init");
+        if (initializer == null)
+            return 0;
+        return initializer.arity();
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        NodeInstance instance = new NodeInstance(this);
+        NodeFunction initializer = findMethod("init");
+        if (initializer != null)
+            initializer.bind(instance).call(arguments);
+        return instance;
+    }
+
+    @Override
+    Object get(Token name) {
+        NodeFunction method = findMethod(name.lexeme);
+        if (method != null)
+            return method.bind(this);
+
+        throw new RuntimeError(name, String.format("Undefined property '%s'.", name.lexeme));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
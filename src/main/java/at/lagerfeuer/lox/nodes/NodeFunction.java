@@ -0,0 +1,49 @@
+package at.lagerfeuer.lox.nodes;
+
+final class NodeFunction implements NodeCallable {
+    final FunctionRoot root;
+    private final Frame closure;
+
+    NodeFunction(FunctionRoot root, Frame closure) {
+        this.root = root;
+        this.closure = closure;
+    }
+
+    @Override
+    public int arity() {
+        return root.arity;
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        Frame frame = new Frame(closure, root.slots);
+        System.arraycopy(arguments, 0, frame.slots, 0, arguments.length);
+
+        try {
+            for (StmtNode stmt : root.body)
+                stmt.execute(frame);
+        } catch (ReturnException ret) {
+            if (root.isInitializer)
+                return closure.slots[0];
+            return ret.value;
+        }
+
+        if (root.isInitializer)
+            return closure.slots[0];
+        return null;
+    }
+
+    NodeFunction bind(NodeInstance instance) {
+        Frame frame = new Frame(closure, 1);
+        frame.slots[0] = instance;
+        return new NodeFunction(root, frame);
+    }
+
+    @Override
+    public String toString() {
+        // NOTE matches LoxFunction, qualifiers are never part of a function value
+        return (root.name != null)
+                ? String.format("<function %s :: >", root.name)
+                : "<anonymous function>";
+    }
+}
@@ -0,0 +1,36 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class NodeInstance {
+    private final NodeClass klass;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    NodeInstance(NodeClass klass) {
+        this.klass = klass;
+    }
+
+    Object get(Token name) {
+        if (fields.containsKey(name.lexeme))
+            return fields.get(name.lexeme);
+
+        NodeFunction method = klass.findMethod(name.lexeme);
+        if (method != null)
+            return method.bind(this);
+
+        throw new RuntimeError(name, String.format("Undefined property '%s'.", name.lexeme));
+    }
+
+    void set(Token name, Object value) {
+        fields.put(name.lexeme, value);
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
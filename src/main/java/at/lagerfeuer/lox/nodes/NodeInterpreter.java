@@ -0,0 +1,58 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.Engine;
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.Lox;
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a tree of self-specializing nodes.
+ * <p>
+ * The AST is translated once into {@link Node}s that execute themselves. Operator nodes rewrite themselves to a
+ * version specialized on the operand types they observe, so hot arithmetic and comparisons run on unboxed doubles
+ * without any dispatch on the operator. Produces the same output and runtime errors as the {@link Interpreter}.
+ */
+public final class NodeInterpreter implements Engine {
+    private final Map<String, Object> globals = new HashMap<>();
+    private final NodeTranslator translator = new NodeTranslator(globals);
+
+    public NodeInterpreter() {
+        globals.put("clock", new NodeNative(0,
+                arguments -> (double) System.currentTimeMillis() / 1000.0));
+        globals.put("print", new NodeNative(1, arguments -> {
+            System.out.println(Interpreter.stringify(arguments[0]));
+            return null;
+        }));
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        try {
+            // NOTE globals live in the map, top-level code runs without a frame
+            for (StmtNode stmt : translator.translate(stmts))
+                stmt.execute(null);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    @Override
+    public Object interpret(Expr expr) {
+        // the return node is the parent of the expression, so it can specialize itself
+        StmtNode root = new StatementNodes.ReturnNode(translator.translate(expr));
+        try {
+            root.execute(null);
+        } catch (ReturnException ret) {
+            return ret.value;
+        } catch (RuntimeError error) {
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package at.lagerfeuer.lox.nodes;
+
+/**
+ * A function implemented in Java.
+ */
+final class NodeNative implements NodeCallable {
+    interface Body {
+        Object call(Object[] arguments);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    NodeNative(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        return body.call(arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native function>";
+    }
+}
@@ -0,0 +1,224 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.Token;
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.List;
+import java.util.Map;
+
+import static at.lagerfeuer.lox.nodes.ArithmeticNodes.*;
+import static at.lagerfeuer.lox.nodes.ExpressionNodes.*;
+import static at.lagerfeuer.lox.nodes.ObjectNodes.*;
+import static at.lagerfeuer.lox.nodes.StatementNodes.*;
+import static at.lagerfeuer.lox.nodes.VariableNodes.*;
+
+/**
+ * Translates a resolved AST into executable nodes for the {@link NodeInterpreter}.
+ * Operators start out uninitialized and specialize themselves at runtime.
+ */
+final class NodeTranslator implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final Map<String, Object> globals;
+
+    NodeTranslator(Map<String, Object> globals) {
+        this.globals = globals;
+    }
+
+    StmtNode translate(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    StmtNode[] translate(List<Stmt> stmts) {
+        StmtNode[] nodes = new StmtNode[stmts.size()];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = translate(stmts.get(i));
+        return nodes;
+    }
+
+    ExprNode translate(Expr expr) {
+        if (expr == null)
+            return null;
+        return expr.accept(this);
+    }
+
+    private ExprNode[] translateAll(List<Expr> exprs) {
+        ExprNode[] nodes = new ExprNode[exprs.size()];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = translate(exprs.get(i));
+        return nodes;
+    }
+
+    private FunctionRoot function(Token name, List<Token> parameters, List<Stmt> body, int slots,
+                                  boolean isInitializer) {
+        return new FunctionRoot(name != null ? name.lexeme : null, parameters.size(), slots, isInitializer,
+                translate(body));
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        return write(expr.name, expr.depth, expr.slot, translate(expr.value), globals);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        ExprNode left = translate(expr.left);
+        ExprNode right = translate(expr.right);
+
+        switch (expr.operator.type) {
+            case PLUS:
+                return new AddUninitializedNode(left, right, expr.operator);
+            case MINUS:
+                return new SubtractNode(left, right, expr.operator);
+            case STAR:
+                return new MultiplyNode(left, right, expr.operator);
+            case SLASH:
+                return new DivideNode(left, right, expr.operator);
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return new CompareUninitializedNode(left, right, expr.operator);
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                return new EqualNode(left, right, expr.operator);
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + expr.operator.type);
+        }
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return translate(expr.expr);
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        return new CallNode(expr.paren, translate(expr.callee), translateAll(expr.arguments));
+    }
+
+    @Override
+    public ExprNode visitCommaExpr(Expr.Comma expr) {
+        return new CommaNode(translateAll(expr.exprs));
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        return new GetNode(expr.name, translate(expr.object));
+    }
+
+    @Override
+    public ExprNode visitLambdaExpr(Expr.Lambda expr) {
+        return new LambdaNode(function(null, expr.parameters, expr.body, expr.slots, false));
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        ExprNode left = translate(expr.left);
+        ExprNode right = translate(expr.right);
+        switch (expr.operator.type) {
+            case AND:
+                return new AndNode(left, right);
+            case OR:
+                return new OrNode(left, right);
+            default:
+                throw new IllegalArgumentException("Unexpected logical operator " + expr.operator.type);
+        }
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        return new SetNode(expr.name, translate(expr.object), translate(expr.value));
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        return new SuperNode(expr.depth, expr.method);
+    }
+
+    @Override
+    public ExprNode visitTernaryExpr(Expr.Ternary expr) {
+        return new TernaryNode(translate(expr.condition), translate(expr.thenBranch), translate(expr.elseBranch));
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return new ThisNode(expr.depth);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        ExprNode right = translate(expr.right);
+        switch (expr.operator.type) {
+            case MINUS:
+                return new NegateNode(right, expr.operator);
+            case BANG:
+                return new NotNode(right);
+            default:
+                throw new IllegalArgumentException("Unexpected unary operator " + expr.operator.type);
+        }
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return read(expr.name, expr.depth, expr.slot, globals);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new BlockNode(stmt.slots, translate(stmt.stmts));
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(Stmt.Break stmt) {
+        return new BreakNode();
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        FunctionRoot[] methods = new FunctionRoot[stmt.methods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            Stmt.Function method = stmt.methods.get(i);
+            methods[i] = function(method.name, method.parameters, method.body, method.slots,
+                    method.name.lexeme.equals("init"));
+        }
+        Token superclassName = stmt.superclass != null ? stmt.superclass.name : null;
+        return new ClassNode(stmt.name, stmt.slot, superclassName, translate(stmt.superclass), methods, globals);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new ExpressionNode(translate(stmt.expr));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        FunctionRoot root = function(stmt.name, stmt.parameters, stmt.body, stmt.slots, false);
+        return new FunctionNode(stmt.name, stmt.slot, root, globals);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        StmtNode elseBranch = stmt.elseBranch != null ? translate(stmt.elseBranch) : null;
+        return new IfNode(translate(stmt.condition), translate(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        return new ReturnNode(translate(stmt.expr));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        return new VarNode(stmt.name, stmt.slot, translate(stmt.initializer), globals);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new WhileNode(translate(stmt.condition), translate(stmt.body));
+    }
+}
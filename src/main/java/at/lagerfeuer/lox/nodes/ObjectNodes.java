@@ -0,0 +1,106 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+/**
+ * Calls, property access and function values.
+ */
+final class ObjectNodes {
+    private ObjectNodes() {
+    }
+
+    static final class CallNode extends ExprNode {
+        private final Token paren;
+        ExprNode callee;
+        ExprNode[] arguments;
+
+        CallNode(Token paren, ExprNode callee, ExprNode[] arguments) {
+            this.paren = paren;
+            this.callee = adopt(callee);
+            this.arguments = adopt(arguments);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return call(frame);
+            } catch (StackOverflowError error) {
+                // NOTE same as the tree interpreter, the innermost call reports the overflow
+                throw new RuntimeError(paren, "Stack overflow.");
+            }
+        }
+
+        private Object call(Frame frame) {
+            Object function = callee.execute(frame);
+
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++)
+                values[i] = arguments[i].execute(frame);
+
+            if (!(function instanceof NodeCallable))
+                throw new RuntimeError(paren, "Can only call functions and classes.");
+
+            NodeCallable callable = (NodeCallable) function;
+            if (callable.arity() != values.length)
+                throw new RuntimeError(paren, String.format("Function expects %d arguments, but got %d.",
+                        callable.arity(), values.length));
+            return callable.call(values);
+        }
+    }
+
+    static final class GetNode extends ExprNode {
+        private final Token name;
+        ExprNode object;
+
+        GetNode(Token name, ExprNode object) {
+            this.name = name;
+            this.object = adopt(object);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object instance = object.execute(frame);
+            if (instance instanceof NodeInstance)
+                return ((NodeInstance) instance).get(name);
+
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+    }
+
+    static final class SetNode extends ExprNode {
+        private final Token name;
+        ExprNode object;
+        ExprNode value;
+
+        SetNode(Token name, ExprNode object, ExprNode value) {
+            this.name = name;
+            this.object = adopt(object);
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object instance = object.execute(frame);
+            if (!(instance instanceof NodeInstance))
+                throw new RuntimeError(name, "Only instances have fields.");
+
+            Object result = value.execute(frame);
+            ((NodeInstance) instance).set(name, result);
+            return result;
+        }
+    }
+
+    static final class LambdaNode extends ExprNode {
+        final FunctionRoot root;
+
+        LambdaNode(FunctionRoot root) {
+            this.root = adopt(root);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return new NodeFunction(root, frame);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package at.lagerfeuer.lox.nodes;
+
+final class ReturnException extends RuntimeException {
+    final Object value;
+
+    ReturnException(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
@@ -0,0 +1,195 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class StatementNodes {
+    private StatementNodes() {
+    }
+
+    /**
+     * Define a variable in the current scope.
+     *
+     * @param slot slot assigned by the {@link at.lagerfeuer.lox.ResolverPass}, -1 for globals
+     */
+    private static void define(Frame frame, Token name, int slot, Map<String, Object> globals, Object value) {
+        if (slot < 0)
+            globals.put(name.lexeme, value);
+        else
+            frame.slots[slot] = value;
+    }
+
+    static final class ExpressionNode extends StmtNode {
+        ExprNode expr;
+
+        ExpressionNode(ExprNode expr) {
+            this.expr = adopt(expr);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            expr.execute(frame);
+        }
+    }
+
+    static final class BlockNode extends StmtNode {
+        private final int slots;
+        StmtNode[] body;
+
+        BlockNode(int slots, StmtNode[] body) {
+            this.slots = slots;
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            Frame scope = new Frame(frame, slots);
+            for (StmtNode stmt : body)
+                stmt.execute(scope);
+        }
+    }
+
+    static final class IfNode extends StmtNode {
+        ExprNode condition;
+        StmtNode thenBranch;
+        StmtNode elseBranch;
+
+        IfNode(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            if (condition.executeCondition(frame))
+                thenBranch.execute(frame);
+            else if (elseBranch != null)
+                elseBranch.execute(frame);
+        }
+    }
+
+    static final class WhileNode extends StmtNode {
+        ExprNode condition;
+        StmtNode body;
+
+        WhileNode(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            try {
+                while (condition.executeCondition(frame))
+                    body.execute(frame);
+            } catch (BreakException ignored) {
+                // leave the loop
+            }
+        }
+    }
+
+    static final class BreakNode extends StmtNode {
+        @Override
+        void execute(Frame frame) {
+            throw BreakException.INSTANCE;
+        }
+    }
+
+    static final class ReturnNode extends StmtNode {
+        ExprNode value;
+
+        ReturnNode(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            throw new ReturnException(value == null ? null : value.execute(frame));
+        }
+    }
+
+    static final class VarNode extends StmtNode {
+        private final Token name;
+        private final int slot;
+        private final Map<String, Object> globals;
+        ExprNode initializer;
+
+        VarNode(Token name, int slot, ExprNode initializer, Map<String, Object> globals) {
+            this.name = name;
+            this.slot = slot;
+            this.globals = globals;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            define(frame, name, slot, globals, initializer == null ? null : initializer.execute(frame));
+        }
+    }
+
+    static final class FunctionNode extends StmtNode {
+        private final Token name;
+        private final int slot;
+        private final Map<String, Object> globals;
+        final FunctionRoot root;
+
+        FunctionNode(Token name, int slot, FunctionRoot root, Map<String, Object> globals) {
+            this.name = name;
+            this.slot = slot;
+            this.globals = globals;
+            this.root = adopt(root);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            define(frame, name, slot, globals, new NodeFunction(root, frame));
+        }
+    }
+
+    static final class ClassNode extends StmtNode {
+        private final Token name;
+        private final int slot;
+        private final Map<String, Object> globals;
+        // null if the class has no superclass
+        private final Token superclassName;
+        ExprNode superclass;
+        FunctionRoot[] methods;
+
+        ClassNode(Token name, int slot, Token superclassName, ExprNode superclass, FunctionRoot[] methods,
+                  Map<String, Object> globals) {
+            this.name = name;
+            this.slot = slot;
+            this.globals = globals;
+            this.superclassName = superclassName;
+            this.superclass = adopt(superclass);
+            this.methods = adopt(methods);
+        }
+
+        @Override
+        void execute(Frame frame) {
+            Object parent = null;
+            if (superclass != null) {
+                parent = superclass.execute(frame);
+                if (!(parent instanceof NodeClass))
+                    throw new RuntimeError(superclassName, "Superclass must be a class.");
+            }
+
+            define(frame, name, slot, globals, null);
+            Frame scope = frame;
+            if (parent != null) {
+                scope = new Frame(frame, 1);
+                scope.slots[0] = parent;
+            }
+
+            Map<String, NodeFunction> functions = new HashMap<>();
+            for (FunctionRoot method : methods)
+                functions.put(method.name, new NodeFunction(method, scope));
+
+            define(frame, name, slot, globals, new NodeClass(name.lexeme, (NodeClass) parent, functions));
+        }
+    }
+}
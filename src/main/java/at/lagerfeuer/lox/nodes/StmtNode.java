@@ -0,0 +1,5 @@
+package at.lagerfeuer.lox.nodes;
+
+abstract class StmtNode extends Node {
+    abstract void execute(Frame frame);
+}
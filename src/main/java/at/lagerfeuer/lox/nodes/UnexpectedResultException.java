@@ -0,0 +1,14 @@
+package at.lagerfeuer.lox.nodes;
+
+/**
+ * Thrown by a type-specialized execute method when the actual value does not have the expected type.
+ * The caller has to fall back to a more generic node.
+ */
+final class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
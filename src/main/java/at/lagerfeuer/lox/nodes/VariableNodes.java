@@ -0,0 +1,154 @@
+package at.lagerfeuer.lox.nodes;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+
+import java.util.Map;
+
+/**
+ * Variable access.
+ * <p>
+ * Locals are read from the slot assigned by the {@link at.lagerfeuer.lox.ResolverPass}, variables of the innermost
+ * scope get their own node that skips walking the frame chain. Globals are looked up by name.
+ */
+final class VariableNodes {
+    private VariableNodes() {
+    }
+
+    static ExprNode read(Token name, int depth, int slot, Map<String, Object> globals) {
+        if (depth < 0)
+            return new GlobalReadNode(name, globals);
+        if (depth == 0)
+            return new LocalReadNode(slot);
+        return new OuterReadNode(depth, slot);
+    }
+
+    static ExprNode write(Token name, int depth, int slot, ExprNode value, Map<String, Object> globals) {
+        if (depth < 0)
+            return new GlobalWriteNode(name, value, globals);
+        return new LocalWriteNode(depth, slot, value);
+    }
+
+    static final class LocalReadNode extends ExprNode {
+        private final int slot;
+
+        LocalReadNode(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.slots[slot];
+        }
+    }
+
+    static final class OuterReadNode extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        OuterReadNode(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.ancestor(depth).slots[slot];
+        }
+    }
+
+    static final class LocalWriteNode extends ExprNode {
+        private final int depth;
+        private final int slot;
+        ExprNode value;
+
+        LocalWriteNode(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.ancestor(depth).slots[slot] = result;
+            return result;
+        }
+    }
+
+    static final class GlobalReadNode extends ExprNode {
+        private final Token name;
+        private final Map<String, Object> globals;
+
+        GlobalReadNode(Token name, Map<String, Object> globals) {
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = globals.get(name.lexeme);
+            if (value == null && !globals.containsKey(name.lexeme))
+                throw new RuntimeError(name, String.format("Undefined variable '%s'.", name.lexeme));
+            return value;
+        }
+    }
+
+    static final class GlobalWriteNode extends ExprNode {
+        private final Token name;
+        private final Map<String, Object> globals;
+        ExprNode value;
+
+        GlobalWriteNode(Token name, ExprNode value, Map<String, Object> globals) {
+            this.name = name;
+            this.globals = globals;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            if (!globals.containsKey(name.lexeme))
+                throw new RuntimeError(name, String.format("Undefined variable '%s'.", name.lexeme));
+            globals.put(name.lexeme, result);
+            return result;
+        }
+    }
+
+    static final class ThisNode extends ExprNode {
+        private final int depth;
+
+        ThisNode(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            // `this` is the only variable in its scope
+            return frame.ancestor(depth).slots[0];
+        }
+    }
+
+    static final class SuperNode extends ExprNode {
+        private final int depth;
+        private final Token method;
+
+        SuperNode(int depth, Token method) {
+            this.depth = depth;
+            this.method = method;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Frame scope = frame.ancestor(depth);
+            NodeClass superclass = (NodeClass) scope.slots[0];
+            // `this` lives in the scope right inside the one holding `super`
+            NodeInstance object = (NodeInstance) frame.ancestor(depth - 1).slots[0];
+
+            NodeFunction function = superclass.findMethod(method.lexeme);
+            if (function == null)
+                throw new RuntimeError(method, String.format("Undefined property '%s'.", method.lexeme));
+            return function.bind(object);
+        }
+    }
+}
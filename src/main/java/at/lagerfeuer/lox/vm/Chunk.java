@@ -0,0 +1,77 @@
+package at.lagerfeuer.lox.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bytecode of a single function: instructions, constant pool and line table.
+ */
+final class Chunk {
+    String filename;
+
+    byte[] code = new byte[64];
+    // line of the source code each byte of `code` was compiled from
+    int[] lines = new int[64];
+    int count = 0;
+
+    private final List<Object> constantList = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    // constant pool, available after finish()
+    Object[] constants;
+
+    void write(byte b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = b;
+        lines[count] = line;
+        count++;
+    }
+
+    void writeShort(int value, int line) {
+        write((byte) ((value >> 8) & 0xff), line);
+        write((byte) (value & 0xff), line);
+    }
+
+    void patchShort(int offset, int value) {
+        code[offset] = (byte) ((value >> 8) & 0xff);
+        code[offset + 1] = (byte) (value & 0xff);
+    }
+
+    /**
+     * Add a value to the constant pool, equal strings and numbers share one entry.
+     *
+     * @return index of the constant
+     */
+    int addConstant(Object value) {
+        if (value instanceof String || value instanceof Double) {
+            Integer index = constantIndex.get(value);
+            if (index != null)
+                return index;
+            constantIndex.put(value, constantList.size());
+        }
+        constantList.add(value);
+        return constantList.size() - 1;
+    }
+
+    int constantCount() {
+        return constantList.size();
+    }
+
+    /**
+     * Trim the code to its final size and freeze the constant pool.
+     *
+     * @param filename name of the source file, for error messages
+     */
+    void finish(String filename) {
+        this.filename = filename;
+        code = Arrays.copyOf(code, count);
+        lines = Arrays.copyOf(lines, count);
+        constants = constantList.toArray();
+        constantIndex.clear();
+    }
+}
@@ -0,0 +1,639 @@
+package at.lagerfeuer.lox.vm;
+
+import at.lagerfeuer.lox.FunctionType;
+import at.lagerfeuer.lox.Lox;
+import at.lagerfeuer.lox.Token;
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static at.lagerfeuer.lox.vm.OpCode.*;
+
+/**
+ * Lowers a resolved AST to bytecode for the {@link VM}.
+ * <p>
+ * Locals live on the VM stack. The compiler mirrors the scopes of the {@link at.lagerfeuer.lox.ResolverPass},
+ * so the (depth, slot) pair of a variable identifies its stack slot, or an upvalue if the variable belongs to an
+ * enclosing function.
+ */
+public final class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_OPERAND = 0xffff;
+
+    /**
+     * Compile-time state of the function being compiled.
+     */
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final VmFunction function;
+        final FunctionType type;
+        // upvalue descriptors, encoded as (index << 1 | isLocal)
+        final List<Integer> upvalues = new ArrayList<>();
+        // slot 0 holds the callee, or the receiver for methods
+        int localCount = 1;
+
+        FunctionState(FunctionState enclosing, VmFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A scope of the ResolverPass, its locals occupy consecutive stack slots starting at `base`.
+     */
+    private static final class Scope {
+        final FunctionState owner;
+        final int base;
+        int count = 0;
+        final BitSet captured = new BitSet();
+
+        Scope(FunctionState owner, int base) {
+            this.owner = owner;
+            this.base = base;
+        }
+    }
+
+    /**
+     * Innermost loop of the function being compiled.
+     */
+    private static final class Loop {
+        // number of scopes when the loop was entered
+        final int scopeDepth;
+        // offsets of the jumps emitted by 'break'
+        final List<Integer> breaks = new ArrayList<>();
+
+        Loop(int scopeDepth) {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    private FunctionState current = null;
+    private Loop loop = null;
+    private String filename = "<stdin>";
+    private int line = -1;
+    private boolean hadError = false;
+
+    private Compiler() {
+    }
+
+    /**
+     * Compile a program.
+     *
+     * @param stmts resolved statements
+     * @return the top-level script, or null if a compile error occurred.
+     */
+    public static VmFunction compile(List<Stmt> stmts) {
+        Compiler compiler = new Compiler();
+        compiler.beginFunction(null, 0, FunctionType.NONE);
+        for (Stmt stmt : stmts)
+            compiler.generate(stmt);
+        compiler.emit(NIL);
+        compiler.emit(RETURN);
+        VmFunction script = compiler.endFunction();
+        return compiler.hadError ? null : script;
+    }
+
+    /**
+     * Compile a single expression into a script returning its value.
+     *
+     * @param expr resolved expression
+     * @return the top-level script, or null if a compile error occurred.
+     */
+    public static VmFunction compile(Expr expr) {
+        Compiler compiler = new Compiler();
+        compiler.beginFunction(null, 0, FunctionType.NONE);
+        compiler.generate(expr);
+        compiler.emit(RETURN);
+        VmFunction script = compiler.endFunction();
+        return compiler.hadError ? null : script;
+    }
+
+    private void generate(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void generate(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void generate(List<Stmt> stmts) {
+        for (Stmt stmt : stmts)
+            generate(stmt);
+    }
+
+    private void error(String message) {
+        if (!hadError)
+            Lox.error(filename, line, message);
+        hadError = true;
+    }
+
+    /**
+     * Use `token` as source location for the following instructions.
+     */
+    private void at(Token token) {
+        filename = token.filename;
+        line = token.line;
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void emit(byte op) {
+        chunk().write(op, line);
+    }
+
+    private void emitShort(int operand) {
+        if (operand > MAX_OPERAND)
+            error("Too many constants, variables or arguments in one function.");
+        chunk().writeShort(operand, line);
+    }
+
+    private void emit(byte op, int operand) {
+        emit(op);
+        emitShort(operand);
+    }
+
+    /**
+     * @return offset of the jump operand, to be patched with {@link #patchJump(int)}
+     */
+    private int emitJump(byte op) {
+        emit(op);
+        chunk().writeShort(0, line);
+        return chunk().count - 2;
+    }
+
+    /**
+     * Make the jump at `offset` jump to the current end of the code.
+     */
+    private void patchJump(int offset) {
+        int jump = chunk().count - offset - 2;
+        if (jump > MAX_OPERAND)
+            error("Too much code to jump over.");
+        chunk().patchShort(offset, jump);
+    }
+
+    private void emitLoop(int start) {
+        emit(LOOP);
+        int offset = chunk().count - start + 2;
+        if (offset > MAX_OPERAND)
+            error("Loop body too large.");
+        chunk().writeShort(offset, line);
+    }
+
+    private int constant(Object value) {
+        return chunk().addConstant(value);
+    }
+
+    private void beginFunction(String name, int arity, FunctionType type) {
+        VmFunction function = new VmFunction(name, arity, new Chunk());
+        current = new FunctionState(current, function, type);
+    }
+
+    private VmFunction endFunction() {
+        VmFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        function.chunk.finish(filename);
+        current = current.enclosing;
+        return function;
+    }
+
+    private void beginScope(int base) {
+        scopes.add(new Scope(current, base));
+    }
+
+    private Scope scope() {
+        return scopes.get(scopes.size() - 1);
+    }
+
+    /**
+     * Declare the value on top of the stack as the next local of the innermost scope.
+     */
+    private void declareLocal() {
+        scope().count++;
+        current.localCount++;
+    }
+
+    /**
+     * Discard the innermost scope and pop its locals.
+     */
+    private void endScope() {
+        Scope scope = scopes.remove(scopes.size() - 1);
+        for (int i = scope.count - 1; i >= 0; i--)
+            emit(scope.captured.get(i) ? CLOSE_UPVALUE : POP);
+        current.localCount -= scope.count;
+    }
+
+    /**
+     * Compile a function or lambda and emit the instruction creating its closure.
+     */
+    private void function(String name, List<Token> parameters, List<Stmt> body, FunctionType type) {
+        Loop enclosingLoop = loop;
+        loop = null;
+        int enclosingScopes = scopes.size();
+
+        beginFunction(name, parameters.size(), type);
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            // `this` lives in its own scope, in the receiver slot
+            beginScope(0);
+            scope().count = 1;
+        }
+        beginScope(1);
+        for (Token ignored : parameters)
+            declareLocal();
+        generate(body);
+        emitReturn();
+
+        // locals are discarded by RETURN
+        while (scopes.size() > enclosingScopes)
+            scopes.remove(scopes.size() - 1);
+        FunctionState state = current;
+        VmFunction function = endFunction();
+        loop = enclosingLoop;
+
+        emit(CLOSURE, constant(function));
+        for (int upvalue : state.upvalues) {
+            emit((byte) (upvalue & 1));
+            emitShort(upvalue >> 1);
+        }
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER)
+            emit(GET_LOCAL, 0);
+        else
+            emit(NIL);
+        emit(RETURN);
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        int upvalue = (index << 1) | (isLocal ? 1 : 0);
+        int existing = state.upvalues.indexOf(upvalue);
+        if (existing >= 0)
+            return existing;
+        state.upvalues.add(upvalue);
+        return state.upvalues.size() - 1;
+    }
+
+    /**
+     * @return index of the upvalue of `state` that refers to local `index` of `owner`
+     */
+    private int resolveUpvalue(FunctionState state, FunctionState owner, int index) {
+        if (state.enclosing == owner)
+            return addUpvalue(state, index, true);
+        return addUpvalue(state, resolveUpvalue(state.enclosing, owner, index), false);
+    }
+
+    /**
+     * Emit a variable access.
+     *
+     * @param local  opcode for locals of the current function
+     * @param upval  opcode for variables of enclosing functions
+     * @param global opcode for globals
+     */
+    private void variable(byte local, byte upval, byte global, Token name, int depth, int slot) {
+        if (depth < 0) {
+            emit(global, constant(name.lexeme));
+            return;
+        }
+
+        Scope scope = scopes.get(scopes.size() - 1 - depth);
+        int index = scope.base + slot;
+        if (scope.owner == current) {
+            emit(local, index);
+        } else {
+            scope.captured.set(slot);
+            emit(upval, resolveUpvalue(current, scope.owner, index));
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        generate(expr.value);
+        at(expr.name);
+        variable(SET_LOCAL, SET_UPVALUE, SET_GLOBAL, expr.name, expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        generate(expr.left);
+        generate(expr.right);
+
+        at(expr.operator);
+        switch (expr.operator.type) {
+            case PLUS:
+                emit(ADD); break;
+            case MINUS:
+                emit(SUBTRACT); break;
+            case STAR:
+                emit(MULTIPLY); break;
+            case SLASH:
+                emit(DIVIDE); break;
+            case GREATER:
+                emit(GREATER); break;
+            case GREATER_EQUAL:
+                emit(GREATER_EQUAL); break;
+            case LESS:
+                emit(LESS); break;
+            case LESS_EQUAL:
+                emit(LESS_EQUAL); break;
+            case EQUAL_EQUAL:
+                emit(EQUAL); break;
+            case BANG_EQUAL:
+                emit(NOT_EQUAL); break;
+            default: // unreachable
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        generate(expr.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        generate(expr.callee);
+        for (Expr arg : expr.arguments)
+            generate(arg);
+        at(expr.paren);
+        emit(CALL, expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitCommaExpr(Expr.Comma expr) {
+        for (int i = 0; i < expr.exprs.size(); i++) {
+            if (i > 0)
+                emit(POP);
+            generate(expr.exprs.get(i));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        generate(expr.object);
+        at(expr.name);
+        emit(GET_PROPERTY, constant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+        at(expr.token);
+        function(null, expr.parameters, expr.body, FunctionType.FUNCTION);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            emit(NIL);
+        else if (expr.value.equals(true))
+            emit(TRUE);
+        else if (expr.value.equals(false))
+            emit(FALSE);
+        else
+            emit(CONSTANT, constant(expr.value));
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        generate(expr.left);
+        switch (expr.operator.type) {
+            case OR: {
+                int elseJump = emitJump(JUMP_IF_FALSE);
+                int endJump = emitJump(JUMP);
+                patchJump(elseJump);
+                emit(POP);
+                generate(expr.right);
+                patchJump(endJump);
+                break;
+            }
+            case AND: {
+                int endJump = emitJump(JUMP_IF_FALSE);
+                emit(POP);
+                generate(expr.right);
+                patchJump(endJump);
+                break;
+            }
+            default: // unreachable
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        generate(expr.object);
+        // the tree-walking interpreter checks the object before evaluating the value
+        at(expr.name);
+        emit(CHECK_INSTANCE);
+        generate(expr.value);
+        at(expr.name);
+        emit(SET_PROPERTY, constant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        at(expr.keyword);
+        // `this` is in the scope just inside the one holding `super`
+        variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, expr.keyword, expr.depth - 1, 0);
+        variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, expr.keyword, expr.depth, 0);
+        at(expr.method);
+        emit(GET_SUPER, constant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        generate(expr.condition);
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        generate(expr.thenBranch);
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        emit(POP);
+        generate(expr.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        at(expr.keyword);
+        variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, expr.keyword, expr.depth, 0);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        generate(expr.right);
+        at(expr.operator);
+        switch (expr.operator.type) {
+            case MINUS:
+                emit(NEGATE); break;
+            case BANG:
+                emit(NOT); break;
+            default: // unreachable
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        at(expr.name);
+        variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, expr.name, expr.depth, expr.slot);
+        return null;
+    }
+
+    /**
+     * Define the value on top of the stack as variable `name`.
+     *
+     * @param slot slot assigned by the ResolverPass, -1 for globals
+     */
+    private void define(Token name, int slot) {
+        if (slot < 0)
+            emit(DEFINE_GLOBAL, constant(name.lexeme));
+        else
+            declareLocal();
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        at(stmt.token);
+        // discard the locals of all scopes inside the loop
+        for (int i = scopes.size() - 1; i >= loop.scopeDepth; i--)
+            for (int j = 0; j < scopes.get(i).count; j++)
+                emit(CLOSE_UPVALUE);
+        loop.breaks.add(emitJump(JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope(current.localCount);
+        generate(stmt.stmts);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        at(stmt.name);
+        emit(CLASS, constant(stmt.name.lexeme));
+        define(stmt.name, stmt.slot);
+
+        if (stmt.superclass != null) {
+            beginScope(current.localCount);
+            generate(stmt.superclass);
+            declareLocal();
+
+            variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, stmt.name, (stmt.slot < 0) ? -1 : 1, stmt.slot);
+            at(stmt.superclass.name);
+            emit(INHERIT);
+        }
+
+        at(stmt.name);
+        variable(GET_LOCAL, GET_UPVALUE, GET_GLOBAL, stmt.name,
+                (stmt.slot < 0) ? -1 : (stmt.superclass != null) ? 1 : 0, stmt.slot);
+        for (Stmt.Function method : stmt.methods) {
+            at(method.name);
+            FunctionType type = method.name.lexeme.equals("init")
+                    ? FunctionType.INITIALIZER
+                    : FunctionType.METHOD;
+            function(method.name.lexeme, method.parameters, method.body, type);
+            emit(METHOD, constant(method.name.lexeme));
+        }
+        emit(POP);
+
+        if (stmt.superclass != null)
+            endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        generate(stmt.expr);
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        at(stmt.name);
+        function(stmt.name.lexeme, stmt.parameters, stmt.body, FunctionType.FUNCTION);
+        define(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        generate(stmt.condition);
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        generate(stmt.thenBranch);
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        emit(POP);
+        if (stmt.elseBranch != null)
+            generate(stmt.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        at(stmt.keyword);
+        if (stmt.expr == null) {
+            emitReturn();
+        } else {
+            generate(stmt.expr);
+            emit(RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null)
+            generate(stmt.initializer);
+        else
+            emit(NIL);
+        at(stmt.name);
+        define(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Loop enclosing = loop;
+        loop = new Loop(scopes.size());
+
+        int start = chunk().count;
+        generate(stmt.condition);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        generate(stmt.body);
+        emitLoop(start);
+        patchJump(exitJump);
+        emit(POP);
+        // 'break' jumps past the condition, which has been popped already
+        for (int offset : loop.breaks)
+            patchJump(offset);
+
+        loop = enclosing;
+        return null;
+    }
+}
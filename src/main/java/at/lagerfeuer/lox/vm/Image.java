@@ -0,0 +1,130 @@
+package at.lagerfeuer.lox.vm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary format of a compiled script, so it can be executed without lexing, parsing, resolving and compiling it.
+ * <p>
+ * A function is written as its name, arity, upvalue count, source filename, code, line table and constant pool.
+ * Constants are tagged, nested functions are written recursively.
+ */
+final class Image {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    // NOTE bump whenever the instruction set or this format changes
+    private static final int VERSION = 1;
+
+    private static final byte DOUBLE = 0;
+    private static final byte STRING = 1;
+    private static final byte FUNCTION = 2;
+
+    private Image() {
+    }
+
+    static void write(VmFunction script, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeFunction(script, out);
+    }
+
+    static VmFunction read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a compiled Lox script");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException(String.format("Compiled script has version %d, expected %d", version, VERSION));
+        return readFunction(in);
+    }
+
+    private static void writeFunction(VmFunction function, DataOutputStream out) throws IOException {
+        writeNullableString(function.name, out);
+        out.writeShort(function.arity);
+        out.writeShort(function.upvalueCount);
+
+        Chunk chunk = function.chunk;
+        writeNullableString(chunk.filename, out);
+        out.writeInt(chunk.code.length);
+        out.write(chunk.code);
+        for (int line : chunk.lines)
+            out.writeInt(line);
+
+        out.writeShort(chunk.constants.length);
+        for (Object constant : chunk.constants) {
+            if (constant instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((double) constant);
+            } else if (constant instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) constant, out);
+            } else if (constant instanceof VmFunction) {
+                out.writeByte(FUNCTION);
+                writeFunction((VmFunction) constant, out);
+            } else {
+                throw new IllegalStateException("Unexpected constant " + constant);
+            }
+        }
+    }
+
+    private static VmFunction readFunction(DataInputStream in) throws IOException {
+        String name = readNullableString(in);
+        int arity = in.readUnsignedShort();
+        int upvalueCount = in.readUnsignedShort();
+
+        Chunk chunk = new Chunk();
+        chunk.filename = readNullableString(in);
+        chunk.count = in.readInt();
+        chunk.code = new byte[chunk.count];
+        in.readFully(chunk.code);
+        chunk.lines = new int[chunk.count];
+        for (int i = 0; i < chunk.count; i++)
+            chunk.lines[i] = in.readInt();
+
+        chunk.constants = new Object[in.readUnsignedShort()];
+        for (int i = 0; i < chunk.constants.length; i++) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case DOUBLE:
+                    chunk.constants[i] = in.readDouble();
+                    break;
+                case STRING:
+                    chunk.constants[i] = readString(in);
+                    break;
+                case FUNCTION:
+                    chunk.constants[i] = readFunction(in);
+                    break;
+                default:
+                    throw new IOException("Unknown constant tag " + tag);
+            }
+        }
+
+        VmFunction function = new VmFunction(name, arity, chunk);
+        function.upvalueCount = upvalueCount;
+        return function;
+    }
+
+    // NOTE not writeUTF, it is limited to 64KB
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableString(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            writeString(value, out);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
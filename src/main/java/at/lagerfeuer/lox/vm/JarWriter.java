@@ -0,0 +1,121 @@
+package at.lagerfeuer.lox.vm;
+
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles a script ahead of time into a runnable jar.
+ * <p>
+ * The jar contains the compiled script and the runtime it needs: the VM and the classes of `at.lagerfeuer.lox` it
+ * references. The lexer, parser, resolver and compiler are part of these packages but never loaded, running the jar
+ * starts executing bytecode right away.
+ */
+public final class JarWriter {
+    private static final String VM_PACKAGE = "at/lagerfeuer/lox/vm/";
+
+    private JarWriter() {
+    }
+
+    /**
+     * @param stmts  resolved statements
+     * @param output path of the jar
+     * @return false if a compile error occurred
+     */
+    public static boolean write(List<Stmt> stmts, Path output) throws IOException {
+        VmFunction script = Compiler.compile(stmts);
+        if (script == null)
+            return false;
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Launcher.class.getName());
+
+        try (JarOutputStream jar = new JarOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(output)), manifest)) {
+            jar.putNextEntry(new JarEntry(VM_PACKAGE + Launcher.IMAGE));
+            DataOutputStream out = new DataOutputStream(jar);
+            Image.write(script, out);
+            out.flush();
+            jar.closeEntry();
+
+            copyRuntime(jar);
+        }
+        return true;
+    }
+
+    /**
+     * Runtime classes: the VM package, the top-level interpreter package with the AST its visitors depend on and the
+     * utilities. The JIT and the node interpreter are not needed to run bytecode.
+     */
+    private static boolean isRuntime(String name) {
+        if (!name.endsWith(".class"))
+            return false;
+        if (name.startsWith(VM_PACKAGE) || name.startsWith("at/lagerfeuer/lox/ast/")
+                || name.startsWith("at/lagerfeuer/utils/"))
+            return true;
+        String root = "at/lagerfeuer/lox/";
+        return name.startsWith(root) && name.indexOf('/', root.length()) < 0;
+    }
+
+    /**
+     * Copy the runtime classes from wherever this class was loaded from, the jlox jar or a class directory.
+     */
+    private static void copyRuntime(JarOutputStream jar) throws IOException {
+        Path source;
+        try {
+            source = Paths.get(JarWriter.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot locate the jlox runtime", e);
+        }
+
+        if (Files.isDirectory(source)) {
+            List<Path> classes;
+            try (Stream<Path> files = Files.walk(source)) {
+                classes = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : classes) {
+                String name = source.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (isRuntime(name)) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        copy(name, in, jar);
+                    }
+                }
+            }
+        } else {
+            try (JarFile runtime = new JarFile(source.toFile())) {
+                Enumeration<JarEntry> entries = runtime.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (isRuntime(entry.getName())) {
+                        try (InputStream in = runtime.getInputStream(entry)) {
+                            copy(entry.getName(), in, jar);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copy(String name, InputStream in, JarOutputStream jar) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        in.transferTo(jar);
+        jar.closeEntry();
+    }
+}
@@ -0,0 +1,43 @@
+package at.lagerfeuer.lox.vm;
+
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.utils.ExitCode;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Main class of the jars written by the {@link JarWriter}, runs the compiled script stored next to it.
+ */
+public final class Launcher {
+    static final String IMAGE = "program.loxc";
+
+    private Launcher() {
+    }
+
+    public static void main(String[] args) {
+        VmFunction script;
+        try (InputStream stream = Launcher.class.getResourceAsStream(IMAGE)) {
+            if (stream == null) {
+                System.err.println("No compiled script found");
+                System.exit(ExitCode.DATAERR);
+                return;
+            }
+            script = Image.read(new DataInputStream(new BufferedInputStream(stream)));
+        } catch (IOException e) {
+            System.err.println("Could not read compiled script: " + e.getMessage());
+            System.exit(ExitCode.DATAERR);
+            return;
+        }
+
+        try {
+            new VM().execute(script);
+        } catch (RuntimeError error) {
+            // NOTE not Lox.runtimeError, Lox depends on the command line parser which is not part of the runtime
+            System.err.println(error.report());
+            System.exit(ExitCode.SOFTWARE);
+        }
+    }
+}
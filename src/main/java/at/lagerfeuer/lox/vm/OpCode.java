@@ -0,0 +1,55 @@
+package at.lagerfeuer.lox.vm;
+
+/**
+ * Instruction set of the {@link VM}.
+ * Operands follow the opcode in the code array, all of them are unsigned 16-bit big endian values.
+ */
+final class OpCode {
+    // Constants and literals
+    static final byte CONSTANT = 0;      // [constant]
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    // Variables
+    static final byte GET_LOCAL = 5;     // [slot]
+    static final byte SET_LOCAL = 6;     // [slot]
+    static final byte GET_UPVALUE = 7;   // [index]
+    static final byte SET_UPVALUE = 8;   // [index]
+    static final byte GET_GLOBAL = 9;    // [name]
+    static final byte SET_GLOBAL = 10;   // [name]
+    static final byte DEFINE_GLOBAL = 11; // [name]
+    // Properties
+    static final byte GET_PROPERTY = 12; // [name]
+    static final byte SET_PROPERTY = 13; // [name]
+    static final byte CHECK_INSTANCE = 14;
+    static final byte GET_SUPER = 15;    // [name]
+    // Operators
+    static final byte EQUAL = 16;
+    static final byte NOT_EQUAL = 17;
+    static final byte GREATER = 18;
+    static final byte GREATER_EQUAL = 19;
+    static final byte LESS = 20;
+    static final byte LESS_EQUAL = 21;
+    static final byte ADD = 22;
+    static final byte SUBTRACT = 23;
+    static final byte MULTIPLY = 24;
+    static final byte DIVIDE = 25;
+    static final byte NOT = 26;
+    static final byte NEGATE = 27;
+    // Control flow
+    static final byte JUMP = 28;          // [offset]
+    static final byte JUMP_IF_FALSE = 29; // [offset]
+    static final byte LOOP = 30;          // [offset]
+    // Functions and classes
+    static final byte CALL = 31;          // [argument count]
+    static final byte CLOSURE = 32;       // [function] followed by [is local, index] per upvalue
+    static final byte CLOSE_UPVALUE = 33;
+    static final byte RETURN = 34;
+    static final byte CLASS = 35;         // [name]
+    static final byte INHERIT = 36;
+    static final byte METHOD = 37;        // [name]
+
+    private OpCode() {
+    }
+}
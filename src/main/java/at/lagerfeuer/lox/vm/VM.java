@@ -0,0 +1,503 @@
+package at.lagerfeuer.lox.vm;
+
+import at.lagerfeuer.lox.Engine;
+import at.lagerfeuer.lox.Interpreter;
+import at.lagerfeuer.lox.Lox;
+import at.lagerfeuer.lox.RuntimeError;
+import at.lagerfeuer.lox.Token;
+import at.lagerfeuer.lox.TokenType;
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Stack based virtual machine executing the bytecode produced by the {@link Compiler}.
+ * Produces the same output and runtime errors as the tree-walking {@link Interpreter}.
+ */
+public final class VM implements Engine {
+    public static final int DEFAULT_MAX_DEPTH = 1 << 16;
+
+    private static final class CallFrame {
+        VmClosure closure;
+        int ip;
+        // stack slot of the callee, slot 0 of the function
+        int base;
+    }
+
+    private final Map<String, Object> globals = new HashMap<>();
+    // NOTE call frames live on the heap, the depth is not limited by the JVM stack
+    private final int maxDepth;
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    // open upvalues, sorted by stack slot in descending order
+    private VmUpvalue openUpvalues = null;
+
+    public VM() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param maxDepth maximum number of nested calls, a deeper call fails with a "Stack overflow." runtime error
+     */
+    public VM(int maxDepth) {
+        this.maxDepth = maxDepth;
+        globals.put("clock", new VmNative(0,
+                arguments -> (double) System.currentTimeMillis() / 1000.0));
+        globals.put("print", new VmNative(1, arguments -> {
+            System.out.println(Interpreter.stringify(arguments[0]));
+            return null;
+        }));
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        VmFunction script = Compiler.compile(stmts);
+        if (script == null)
+            return;
+        try {
+            execute(script);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    @Override
+    public Object interpret(Expr expr) {
+        VmFunction script = Compiler.compile(expr);
+        if (script == null)
+            return null;
+        try {
+            return execute(script);
+        } catch (RuntimeError error) {
+            return null;
+        }
+    }
+
+    /**
+     * Execute a compiled script.
+     *
+     * @return the value returned by the script
+     * @throws RuntimeError if the script failed, the VM is reset and can be reused
+     */
+    Object execute(VmFunction script) {
+        try {
+            VmClosure closure = new VmClosure(script);
+            push(closure);
+            try {
+                callClosure(closure, 0);
+            } catch (VmError error) {
+                // NOTE the script has no frame yet, the error is reported at its first line
+                throw error(script.chunk, 0, error.getMessage());
+            }
+            return run();
+        } catch (RuntimeError error) {
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+            Arrays.fill(stack, null);
+            throw error;
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length)
+            stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[sp - 1 - distance];
+    }
+
+    private RuntimeError error(CallFrame frame, int ip, String message) {
+        return error(frame.closure.function.chunk, ip, message);
+    }
+
+    private static RuntimeError error(Chunk chunk, int ip, String message) {
+        int line = chunk.lines[Math.max(0, ip - 1)];
+        return new RuntimeError(new Token(TokenType.EOF, "", null, chunk.filename, line), message);
+    }
+
+    /**
+     * Execute instructions until the frame that was on top when run() was entered returns.
+     *
+     * @return the value returned by that frame
+     */
+    private Object run() {
+        final int exitFrame = frameCount - 1;
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        VmUpvalue[] upvalues = frame.closure.upvalues;
+        int base = frame.base;
+        int ip = frame.ip;
+
+        try {
+            for (; ; ) {
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT:
+                        push(constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)]);
+                        break;
+                    case OpCode.NIL:
+                        push(null);
+                        break;
+                    case OpCode.TRUE:
+                        push(true);
+                        break;
+                    case OpCode.FALSE:
+                        push(false);
+                        break;
+                    case OpCode.POP:
+                        pop();
+                        break;
+                    case OpCode.GET_LOCAL:
+                        push(stack[base + (((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff))]);
+                        break;
+                    case OpCode.SET_LOCAL:
+                        stack[base + (((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff))] = peek(0);
+                        break;
+                    case OpCode.GET_UPVALUE: {
+                        VmUpvalue upvalue = upvalues[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        push((upvalue.slot >= 0) ? stack[upvalue.slot] : upvalue.closed);
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        VmUpvalue upvalue = upvalues[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        if (upvalue.slot >= 0)
+                            stack[upvalue.slot] = peek(0);
+                        else
+                            upvalue.closed = peek(0);
+                        break;
+                    }
+                    case OpCode.GET_GLOBAL: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        Object value = globals.get(name);
+                        if (value == null && !globals.containsKey(name))
+                            throw new VmError(String.format("Undefined variable '%s'.", name));
+                        push(value);
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        if (!globals.containsKey(name))
+                            throw new VmError(String.format("Undefined variable '%s'.", name));
+                        globals.put(name, peek(0));
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL:
+                        globals.put((String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)], pop());
+                        break;
+                    case OpCode.GET_PROPERTY: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        Object object = pop();
+                        if (!(object instanceof VmInstance))
+                            throw new VmError("Only instances have properties.");
+                        push(((VmInstance) object).get(name));
+                        break;
+                    }
+                    case OpCode.CHECK_INSTANCE:
+                        if (!(peek(0) instanceof VmInstance))
+                            throw new VmError("Only instances have fields.");
+                        break;
+                    case OpCode.SET_PROPERTY: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        Object value = pop();
+                        VmInstance instance = (VmInstance) pop();
+                        instance.fields.put(name, value);
+                        push(value);
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        VmClass superclass = (VmClass) pop();
+                        VmInstance instance = (VmInstance) pop();
+                        VmClosure method = superclass.findMethod(name);
+                        if (method == null)
+                            throw new VmError(String.format("Undefined property '%s'.", name));
+                        push(new VmBoundMethod(instance, method));
+                        break;
+                    }
+                    case OpCode.EQUAL: {
+                        Object right = pop();
+                        push(Objects.equals(pop(), right));
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        Object right = pop();
+                        push(!Objects.equals(pop(), right));
+                        break;
+                    }
+                    case OpCode.GREATER:
+                    case OpCode.GREATER_EQUAL:
+                    case OpCode.LESS:
+                    case OpCode.LESS_EQUAL: {
+                        Object right = pop();
+                        Object left = pop();
+                        push(compare(code[ip - 1], left, right));
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object right = pop();
+                        Object left = pop();
+                        if (left instanceof Double && right instanceof Double)
+                            push((double) left + (double) right);
+                        else if (left instanceof String || right instanceof String)
+                            push(Interpreter.stringify(left) + Interpreter.stringify(right));
+                        else
+                            throw new VmError("Expecting operands to be numbers or strings.");
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        Object right = pop();
+                        Object left = pop();
+                        checkNumberOperands(left, right);
+                        push((double) left - (double) right);
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        Object right = pop();
+                        Object left = pop();
+                        checkNumberOperands(left, right);
+                        push((double) left * (double) right);
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        Object right = pop();
+                        Object left = pop();
+                        checkNumberOperands(left, right);
+                        if ((double) right == 0)
+                            throw new VmError("Division by 0");
+                        push((double) left / (double) right);
+                        break;
+                    }
+                    case OpCode.NOT:
+                        push(!Interpreter.isTruthy(pop()));
+                        break;
+                    case OpCode.NEGATE: {
+                        Object right = pop();
+                        if (!(right instanceof Double))
+                            throw new VmError("Operand must be a number.");
+                        push(-((double) right));
+                        break;
+                    }
+                    case OpCode.JUMP: {
+                        int offset = ((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff);
+                        ip += offset;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_FALSE: {
+                        int offset = ((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff);
+                        if (!Interpreter.isTruthy(peek(0)))
+                            ip += offset;
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        int offset = ((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff);
+                        ip -= offset;
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int count = ((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff);
+                        frame.ip = ip;
+                        callValue(peek(count), count);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        upvalues = frame.closure.upvalues;
+                        base = frame.base;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        VmFunction function = (VmFunction) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        VmClosure closure = new VmClosure(function);
+                        push(closure);
+                        for (int i = 0; i < function.upvalueCount; i++) {
+                            boolean isLocal = code[ip++] == 1;
+                            int index = ((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff);
+                            closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : upvalues[index];
+                        }
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE:
+                        closeUpvalues(sp - 1);
+                        pop();
+                        break;
+                    case OpCode.RETURN: {
+                        Object result = pop();
+                        closeUpvalues(base);
+                        Arrays.fill(stack, base, sp, null);
+                        sp = base;
+                        frameCount--;
+                        if (frameCount == exitFrame)
+                            return result;
+                        push(result);
+
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        upvalues = frame.closure.upvalues;
+                        base = frame.base;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLASS:
+                        push(new VmClass((String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)]));
+                        break;
+                    case OpCode.INHERIT: {
+                        Object superclass = peek(1);
+                        if (!(superclass instanceof VmClass))
+                            throw new VmError("Superclass must be a class.");
+                        // NOTE before the METHOD instructions of the class, they override inherited methods
+                        ((VmClass) pop()).methods.putAll(((VmClass) superclass).methods);
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        String name = (String) constants[((code[ip++] & 0xff) << 8) | (code[ip++] & 0xff)];
+                        VmClosure method = (VmClosure) pop();
+                        ((VmClass) peek(0)).methods.put(name, method);
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+                }
+            }
+        } catch (VmError error) {
+            throw error(frame, ip, error.getMessage());
+        }
+    }
+
+    private static void checkNumberOperands(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new VmError("Operands must be numbers.");
+    }
+
+    private static boolean compare(byte op, Object left, Object right) {
+        int cmp;
+        if (left instanceof Double && right instanceof Double) {
+            double l = (double) left;
+            double r = (double) right;
+            switch (op) {
+                case OpCode.GREATER:
+                    return l > r;
+                case OpCode.GREATER_EQUAL:
+                    return l >= r;
+                case OpCode.LESS:
+                    return l < r;
+                default:
+                    return l <= r;
+            }
+        } else if (left instanceof String && right instanceof String) {
+            cmp = ((String) left).compareTo((String) right);
+        } else {
+            throw new VmError("Operands must be numbers or strings.");
+        }
+
+        switch (op) {
+            case OpCode.GREATER:
+                return cmp > 0;
+            case OpCode.GREATER_EQUAL:
+                return cmp >= 0;
+            case OpCode.LESS:
+                return cmp < 0;
+            default:
+                return cmp <= 0;
+        }
+    }
+
+    /**
+     * Call `callee` with the `count` arguments on top of the stack.
+     * Pushes a new call frame for Lox functions, natives are executed right away.
+     */
+    private void callValue(Object callee, int count) {
+        if (callee instanceof VmClosure) {
+            callClosure((VmClosure) callee, count);
+        } else if (callee instanceof VmBoundMethod) {
+            VmBoundMethod bound = (VmBoundMethod) callee;
+            stack[sp - count - 1] = bound.receiver;
+            callClosure(bound.method, count);
+        } else if (callee instanceof VmClass) {
+            VmClass klass = (VmClass) callee;
+            VmClosure initializer = klass.findMethod("init");
+            checkArity((initializer != null) ? initializer.function.arity : 0, count);
+            stack[sp - count - 1] = new VmInstance(klass);
+            if (initializer != null)
+                callClosure(initializer, count);
+        } else if (callee instanceof VmNative) {
+            VmNative function = (VmNative) callee;
+            checkArity(function.arity, count);
+            Object[] arguments = Arrays.copyOfRange(stack, sp - count, sp);
+            Object result = function.body.call(arguments);
+            Arrays.fill(stack, sp - count - 1, sp, null);
+            sp -= count + 1;
+            push(result);
+        } else {
+            throw new VmError("Can only call functions and classes.");
+        }
+    }
+
+    private static void checkArity(int arity, int count) {
+        if (arity != count)
+            throw new VmError(String.format("Function expects %d arguments, but got %d.", arity, count));
+    }
+
+    private void callClosure(VmClosure closure, int count) {
+        checkArity(closure.function.arity, count);
+        if (frameCount >= maxDepth)
+            throw new VmError("Stack overflow.");
+        if (frameCount == frames.length)
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        if (frames[frameCount] == null)
+            frames[frameCount] = new CallFrame();
+
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - count - 1;
+    }
+
+    private VmUpvalue captureUpvalue(int slot) {
+        VmUpvalue previous = null;
+        VmUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot)
+            return upvalue;
+
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if (previous == null)
+            openUpvalues = created;
+        else
+            previous.next = created;
+        return created;
+    }
+
+    /**
+     * Close all open upvalues referring to stack slots at or above `slot`.
+     */
+    private void closeUpvalues(int slot) {
+        while (openUpvalues != null && openUpvalues.slot >= slot) {
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+}
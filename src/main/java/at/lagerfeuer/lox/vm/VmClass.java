@@ -0,0 +1,35 @@
+package at.lagerfeuer.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class VmClass extends VmInstance {
+    final String name;
+    // methods of this class and all its superclasses, INHERIT copies the methods of the superclass
+    final Map<String, VmClosure> methods = new HashMap<>();
+
+    VmClass(String name) {
+        super(null);
+        this.name = name;
+    }
+
+    VmClosure findMethod(String name) {
+        return methods.get(name);
+    }
+
+    /**
+     * Classes only expose their methods, bound to the class itself.
+     */
+    @Override
+    Object get(String name) {
+        VmClosure method = findMethod(name);
+        if (method != null)
+            return new VmBoundMethod(this, method);
+        throw new VmError(String.format("Undefined property '%s'.", name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,19 @@
+package at.lagerfeuer.lox.vm;
+
+/**
+ * Runtime representation of a function: its prototype plus captured variables.
+ */
+final class VmClosure {
+    final VmFunction function;
+    final VmUpvalue[] upvalues;
+
+    VmClosure(VmFunction function) {
+        this.function = function;
+        this.upvalues = new VmUpvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package at.lagerfeuer.lox.vm;
+
+/**
+ * Runtime error raised inside the VM.
+ * The VM turns it into a {@link at.lagerfeuer.lox.RuntimeError} carrying the location of the failing instruction.
+ */
+final class VmError extends RuntimeException {
+    VmError(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,26 @@
+package at.lagerfeuer.lox.vm;
+
+/**
+ * A compiled function, the prototype for its closures.
+ */
+final class VmFunction {
+    // null for lambdas and the top-level script
+    final String name;
+    final int arity;
+    final Chunk chunk;
+    int upvalueCount = 0;
+
+    VmFunction(String name, int arity, Chunk chunk) {
+        this.name = name;
+        this.arity = arity;
+        this.chunk = chunk;
+    }
+
+    @Override
+    public String toString() {
+        // NOTE matches LoxFunction, qualifiers are never part of a function value
+        return (name != null)
+                ? String.format("<function %s :: >", name)
+                : "<anonymous function>";
+    }
+}
@@ -0,0 +1,34 @@
+package at.lagerfeuer.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class VmInstance {
+    final VmClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    VmInstance(VmClass klass) {
+        this.klass = klass;
+    }
+
+    /**
+     * Look up a property the same way {@link at.lagerfeuer.lox.LoxInstance} does:
+     * fields first, then methods of the class and its superclasses.
+     *
+     * @throws VmError if there is no such property
+     */
+    Object get(String name) {
+        if (fields.containsKey(name))
+            return fields.get(name);
+
+        VmClosure method = klass.findMethod(name);
+        if (method != null)
+            return new VmBoundMethod(this, method);
+        throw new VmError(String.format("Undefined property '%s'.", name));
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
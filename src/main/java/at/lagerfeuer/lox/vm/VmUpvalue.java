@@ -0,0 +1,18 @@
+package at.lagerfeuer.lox.vm;
+
+/**
+ * A captured variable.
+ * While open it refers to a slot on the VM stack, once the slot goes out of scope the value is moved into the upvalue.
+ */
+final class VmUpvalue {
+    // stack slot while open, -1 once closed
+    int slot;
+    Object closed;
+    // next open upvalue further down the stack
+    VmUpvalue next;
+
+    VmUpvalue(int slot, VmUpvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
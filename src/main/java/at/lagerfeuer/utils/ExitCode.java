@@ -8,4 +8,5 @@ public final class ExitCode {
     public static final int USAGE = 64;
     public static final int DATAERR = 65;
     public static final int SOFTWARE = 70;
+    public static final int CANTCREAT = 73;
 }
@@ -0,0 +1,110 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Expr;
+import at.lagerfeuer.lox.ast.Stmt;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Folded programs have to print exactly what they print without folding, runtime errors included.
+ */
+class ConstantFoldingPassTest {
+    private List<Stmt> parse(String source, boolean fold) {
+        List<Stmt> stmts = new Parser(new Lexer(source, "test.lox")).parse();
+        new ResolverPass().resolve(stmts);
+        if (fold)
+            new ConstantFoldingPass().fold(stmts);
+        return stmts;
+    }
+
+    private String run(String source, boolean fold) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            PrintStream capture = new PrintStream(out, true);
+            System.setOut(capture);
+            System.setErr(capture);
+            new Interpreter().interpret(parse(source, fold));
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private void assertSameOutput(String expected, String source) {
+        assertEquals(expected, run(source, false));
+        assertEquals(expected, run(source, true));
+    }
+
+    private static Expr printed(Stmt stmt) {
+        return ((Expr.Call) ((Stmt.Expression) stmt).expr).arguments.get(0);
+    }
+
+    @Test
+    void operators() {
+        List<Stmt> stmts = parse("print(1 + 2 * (3 - 1)); print(\"a\" + 1); print(!nil and -2 < 1);", true);
+        assertEquals(5.0, ((Expr.Literal) printed(stmts.get(0))).value);
+        assertEquals("a1", ((Expr.Literal) printed(stmts.get(1))).value);
+        assertEquals(true, ((Expr.Literal) printed(stmts.get(2))).value);
+
+        assertSameOutput("5\na1\ntrue\n-0\nfalse\nx\n1\n3\n",
+                "print(1 + 2 * (3 - 1)); print(\"a\" + 1); print(!nil and -2 < 1); print(-0); print(-0 == 0);"
+                        + "print(nil or \"x\"); print(true ? 1 : 2); 1, 2, print(3);");
+
+        String comparisons = "print(2 > 1); print(1 >= 2); print(\"a\" < \"b\"); print(\"b\" <= \"a\"); print(0 > -0);"
+                + "print(1 != nil); print(\"a\" == \"a\"); print(7 - 2.5 / 0.5); print(!\"\");";
+        stmts = parse(comparisons, true);
+        for (Stmt stmt : stmts)
+            assertTrue(printed(stmt) instanceof Expr.Literal);
+        assertSameOutput("true\nfalse\ntrue\nfalse\nfalse\ntrue\ntrue\n2\ntrue\n", comparisons);
+    }
+
+    @Test
+    void runtimeErrors() {
+        // NOTE the statements before the error still run
+        assertSameOutput("before\n[RuntimeError] test.lox:1\tDivision by 0\n", "print(\"before\"); print(1 / 0);");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperand must be a number.\n", "print(-\"a\");");
+        assertSameOutput("[RuntimeError] test.lox:1\tExpecting operands to be numbers or strings.\n",
+                "print(true + 1);");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperands must be numbers or strings.\n", "print(1 < \"a\");");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperands must be numbers.\n", "print(\"a\" * 2);");
+    }
+
+    @Test
+    void constantLocals() {
+        List<Stmt> stmts = parse("{ var k = 2 * 3; var unset; print(k + 1); print(unset); }", true);
+        List<Stmt> block = ((Stmt.Block) stmts.get(0)).stmts;
+        assertEquals(7.0, ((Expr.Literal) printed(block.get(2))).value);
+        assertTrue(printed(block.get(3)) instanceof Expr.Literal);
+
+        // assigned locals and globals keep their variables
+        stmts = parse("var g = 1; print(g); { var k = 2; k = 3; print(k); }", true);
+        assertTrue(printed(stmts.get(1)) instanceof Expr.Variable);
+        assertTrue(printed(((Stmt.Block) stmts.get(2)).stmts.get(2)) instanceof Expr.Variable);
+
+        assertSameOutput("6\n12\n3\n",
+                "fun f() { var k = 2; var n = 0; while (n < 5) n = n + k; fun g() { return k * n; } print(n);"
+                        + " return g(); } print(f()); { var k = 2; k = 3; print(k); }");
+    }
+
+    @Test
+    void deadBranches() {
+        List<Stmt> stmts = parse("if (false) print(1); else print(2); while (false) print(3); if (nil) print(4);"
+                + "for (var i = 0; false; i = i + 1) print(i);", true);
+        assertEquals(2, stmts.size());
+        assertEquals(2.0, ((Expr.Literal) printed(stmts.get(0))).value);
+
+        assertSameOutput("2\n0\n1\n",
+                "if (false) print(1); else print(2); while (false) print(3); if (\"\") print(4);"
+                        + "fun f(n) { while (true) { if (0) print(5); if (n > 1) break; print(n); n = n + 1; } }"
+                        + "f(0);");
+    }
+}
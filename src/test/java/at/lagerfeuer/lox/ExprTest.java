@@ -9,7 +9,7 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 class ExprTest {
     private Object interpret(String input) {
         Lexer lexer = new Lexer(input);
-        Parser parser = new Parser(lexer.scanTokens());
+        Parser parser = new Parser(lexer);
         Stmt.Expression expr = (Stmt.Expression) parser.parse().get(0);
         return new Interpreter().interpret(expr.expr);
     }
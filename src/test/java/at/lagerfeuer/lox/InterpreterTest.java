@@ -0,0 +1,226 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Stmt;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InterpreterTest {
+    /**
+     * Run a whole program and return everything it printed.
+     */
+    private String run(String source) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(out, true));
+            List<Stmt> stmts = new Parser(new Lexer(source)).parse();
+            new ResolverPass().resolve(stmts);
+            new Interpreter().interpret(stmts);
+        } finally {
+            System.setOut(stdout);
+        }
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void globals() {
+        assertEquals("3\n", run("var a = 1; var b = 2; print(a + b);"));
+        assertEquals("2\n", run("var a = 1; a = a + 1; print(a);"));
+        // globals can be defined after the code using them was resolved, and redefined
+        assertEquals("late\nagain\n", run("fun f() { return g; } var g = \"late\"; print(f()); var g = \"again\"; print(f());"));
+    }
+
+    @Test
+    void scopes() {
+        String source = "var a = \"global\";\n"
+                + "{\n"
+                + "  var a = \"outer\";\n"
+                + "  var b = \"b\";\n"
+                + "  {\n"
+                + "    var a = \"inner\";\n"
+                + "    print(a + b);\n"
+                + "    b = \"c\";\n"
+                + "  }\n"
+                + "  print(a + b);\n"
+                + "}\n"
+                + "print(a);";
+        assertEquals("innerb\nouterc\nglobal\n", run(source));
+    }
+
+    @Test
+    void loops() {
+        String source = "var sum = 0;\n"
+                + "for (var i = 0; i < 10; i = i + 1) {\n"
+                + "  if (i == 5) break;\n"
+                + "  sum = sum + i;\n"
+                + "}\n"
+                + "print(sum);";
+        assertEquals("10\n", run(source));
+    }
+
+    @Test
+    void functions() {
+        String source = "fun fib(n) {\n"
+                + "  if (n < 2) return n;\n"
+                + "  return fib(n - 1) + fib(n - 2);\n"
+                + "}\n"
+                + "print(fib(15));";
+        assertEquals("610\n", run(source));
+    }
+
+    @Test
+    void closures() {
+        String source = "fun counter() {\n"
+                + "  var i = 0;\n"
+                + "  return fun() { i = i + 1; return i; };\n"
+                + "}\n"
+                + "var c = counter();\n"
+                + "c(); c();\n"
+                + "print(c());\n"
+                + "{\n"
+                + "  var a = 1;\n"
+                + "  fun add(b) { return a + b; }\n"
+                + "  a = 2;\n"
+                + "  print(add(3));\n"
+                + "}";
+        assertEquals("3\n5\n", run(source));
+    }
+
+    @Test
+    void flatClosures() {
+        // captured through an intermediate function, shared by two closures, a parameter assigned after capture
+        String source = "fun outer(n) {\n"
+                + "  var unused = \"unused\";\n"
+                + "  fun middle() { fun inner() { n = n + 1; return n; } return inner; }\n"
+                + "  fun peek() { return n; }\n"
+                + "  var inc = middle();\n"
+                + "  inc(); inc();\n"
+                + "  print(peek());\n"
+                + "  n = 10;\n"
+                + "  return inc;\n"
+                + "}\n"
+                + "print(outer(0)());\n"
+                + "{\n"
+                + "  fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                + "  print(fib(10));\n"
+                + "  var a = \"a\";\n"
+                + "  fun get() { return a; }\n"
+                + "  print(get());\n"
+                + "}";
+        assertEquals("2\n11\n55\na\n", run(source));
+    }
+
+    @Test
+    void blockLocals() {
+        // blocks in a function share its environment, sibling blocks reuse slots, loop bodies start out fresh
+        String source = "fun f() {\n"
+                + "  var a = \"a\";\n"
+                + "  { var a = \"inner\"; var b = \"b\"; print(a + b); }\n"
+                + "  { var c; print(c); c = \"c\"; print(a + c); }\n"
+                + "  var first; var last;\n"
+                + "  for (var i = 0; i < 3; i = i + 1) {\n"
+                + "    var j = i * 2; var unset;\n"
+                + "    print(unset);\n"
+                + "    fun get() { return j; }\n"
+                + "    if (i == 0) first = get; else last = get;\n"
+                + "  }\n"
+                + "  print(first()); print(last());\n"
+                + "}\n"
+                + "f();";
+        assertEquals("innerb\nnil\nac\nnil\nnil\nnil\n0\n4\n", run(source));
+    }
+
+    @Test
+    void classClosures() {
+        // methods capture the class itself and outer variables, lambdas in methods capture `this` and `super`
+        String source = "fun make(greeting) {\n"
+                + "  class A { name() { return \"A\"; } copy() { return A(); } }\n"
+                + "  class B < A {\n"
+                + "    name() { return fun() { return greeting + super.name() + this.suffix(); }; }\n"
+                + "    suffix() { return \"B\"; }\n"
+                + "  }\n"
+                + "  return B();\n"
+                + "}\n"
+                + "var b = make(\"hi \");\n"
+                + "print(b.name()());\n"
+                + "print(b.copy());";
+        assertEquals("hi AB\nA instance\n", run(source));
+    }
+
+    @Test
+    void classes() {
+        String source = "class Point {\n"
+                + "  init(x, y) { this.x = x; this.y = y; }\n"
+                + "  sum() { return this.x + this.y; }\n"
+                + "}\n"
+                + "class Point3 < Point {\n"
+                + "  init(x, y, z) { super.init(x, y); this.z = z; }\n"
+                + "  sum() { return super.sum() + this.z; }\n"
+                + "}\n"
+                + "var p = Point3(1, 2, 3);\n"
+                + "print(p.sum());\n"
+                + "print(p);\n"
+                + "print(p.init(4, 5, 6).x);";
+        assertEquals("6\nPoint3 instance\n4\n", run(source));
+    }
+
+    @Test
+    void constructors() {
+        // constructor calls with up to four arguments go straight to the initializer
+        String source = "class A {} class B < A { init() { this.s = 0; } } class C < B { init(a) { this.s = a; } }\n"
+                + "class D { init(a, b) { this.s = a + b; } } class E { init(a, b, c) { this.s = a + b + c; } }\n"
+                + "class F { init(a, b, c, d) { this.s = a + b + c + d; } }\n"
+                + "class G < F { init(a, b, c, d, e) { super.init(a, b, c, d + e); } }\n"
+                + "print(A()); print(B().s); print(C(1).s); print(D(1, 2).s); print(E(1, 2, 3).s);\n"
+                + "print(F(1, 2, 3, 4).s); print(G(1, 2, 3, 4, 5).s);";
+        assertEquals("A instance\n0\n1\n3\n6\n10\n15\n", run(source));
+    }
+
+    @Test
+    void receivers() {
+        // `this` follows the parameters in the environment of a call, locals of blocks follow `this`
+        String source = "class A {\n"
+                + "  init(n) { this.n = n; }\n"
+                + "  add(a, b) { var s = a + b; { var t = s + this.n; fun get() { return t + this.n; } s = get(); } return s; }\n"
+                + "  five(a, b, c, d, e) { return this.n + a + b + c + d + e; }\n"
+                + "  count(i) { if (i == 0) return this.n; return this.count(i - 1); }\n"
+                + "}\n"
+                + "var a = A(1); var add = a.add; var init = a.init;\n"
+                + "print(add(2, 3)); print(a.five(1, 1, 1, 1, 1)); print(A(2).count(3)); print(init(4).n); print(a.n);";
+        assertEquals("7\n6\n2\n4\n4\n", run(source));
+    }
+
+    @Test
+    void arithmetic() {
+        assertEquals("7\n-2\n1.5\n-0\n0\nfalse\ntrue\n", run("print(1 + 2 * 3); print(-(1 + 1)); print(3 / 2);"
+                + "print(-0); print(0 * 1); print(-0 == 0); print(1 + 1 == 2);"));
+        // cached boxes must not change equality of results outside of the cache
+        assertEquals("true\ntrue\n", run("var a = 1000 + 24; print(a == 1024); print((a - 2048) == -1024);"));
+        assertEquals("a1\n", run("var a = \"a\"; print(a + (2 - 1));"));
+    }
+
+    @Test
+    void propertyCaches() {
+        // one access site sees more classes than its cache holds, a field shadows a method once it is set
+        String source = "class A { m() { return \"A\"; } } class B < A {} class C { m() { return \"C\"; } }\n"
+                + "class D < C {} class E { m() { return \"E\"; } }\n"
+                + "fun call(o) { return o.m(); }\n"
+                + "print(call(A()) + call(B()) + call(C()) + call(D()) + call(E()) + call(A()) + call(E()));\n"
+                + "fun f() { return \"field\"; } var a = A(); a.m = f; print(call(a)); print(call(A()));";
+        assertEquals("AACCEAE\nfield\nA\n", run(source));
+    }
+
+    @Test
+    void fieldLayouts() {
+        // the same access sites see instances that got their fields in different orders
+        String source = "class P { init(first) { if (first) { this.x = 1; this.y = nil; } else { this.y = 2; this.x = 3; } } }\n"
+                + "fun show(p) { print(p.x); print(p.y); p.z = p.x; return p.z; }\n"
+                + "print(show(P(true))); print(show(P(false))); var p = P(true); p.y = \"y\"; print(p.y);";
+        assertEquals("1\nnil\n1\n3\n2\n3\ny\n", run(source));
+    }
+}
@@ -0,0 +1,57 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.vm.JarWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A compiled jar has to run on its own and print the same as the interpreter.
+ */
+class JarWriterTest {
+    @TempDir
+    Path dir;
+
+    private String runJar(Path jar) throws Exception {
+        String mainClass;
+        try (JarFile file = new JarFile(jar.toFile())) {
+            mainClass = file.getManifest().getMainAttributes().getValue("Main-Class");
+        }
+
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // NOTE the platform loader as parent, all classes of jlox have to come from the jar
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()},
+                ClassLoader.getPlatformClassLoader())) {
+            System.setOut(new PrintStream(out, true));
+            loader.loadClass(mainClass).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        } finally {
+            System.setOut(stdout);
+        }
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void compiledJarRuns() throws Exception {
+        String source = "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); } print(fib(10));"
+                + "class A { init(x) { this.x = x; } get() { return fun() { return this.x; }; } }"
+                + "print(A(\"closure\").get()()); print(1.5); print(\"s\" + nil);";
+        List<Stmt> stmts = new Parser(new Lexer(source, "test.lox")).parse();
+        new ResolverPass().resolve(stmts);
+
+        Path jar = dir.resolve("test.jar");
+        assertTrue(JarWriter.write(stmts, jar));
+        assertEquals("55\nclosure\n1.5\nsnil\n", runJar(jar));
+    }
+}
@@ -0,0 +1,166 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.jit.CompiledFunction;
+import at.lagerfeuer.lox.jit.Jit;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiled functions have to behave exactly like interpreted ones.
+ * A threshold of 1 compiles every supported function on its first call.
+ */
+class JitTest {
+    private String run(String source, int threshold) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            PrintStream capture = new PrintStream(out, true);
+            System.setOut(capture);
+            System.setErr(capture);
+            List<Stmt> stmts = new Parser(new Lexer(source, "test.lox")).parse();
+            new ResolverPass().resolve(stmts);
+            new Interpreter(new Jit(threshold)).interpret(stmts);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private void assertSameOutput(String expected, String source) {
+        assertEquals(expected, run(source, 0));
+        assertEquals(expected, run(source, 1));
+        assertEquals(expected, run(source, 3));
+    }
+
+    @Test
+    void operators() {
+        assertSameOutput("7\nab\na1\ntrue\nfalse\ntrue\n2\nyes\n",
+                "fun f(a, b) { print(a + b * 3); print(\"a\" + \"b\"); print(\"a\" + a); print(a < b);"
+                        + "  print(!(a <= b) or a == b); print(\"a\" != \"b\" and b >= a); print(nil or b);"
+                        + "  print(0.5 ? \"no\" : \"yes\"); }"
+                        + "f(1, 2);");
+    }
+
+    @Test
+    void controlFlow() {
+        assertSameOutput("55\n10\n10\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); } print(fib(10));"
+                        + "fun sum() { var s = 0; for (var i = 0; i < 100; i = i + 1) { var j = i;"
+                        + "  if (j == 5) break; s = s + j; } return s; }"
+                        + "print(sum()); print(sum());");
+    }
+
+    @Test
+    void closures() {
+        assertSameOutput("1\n2\n3\n",
+                "fun counter() { var i = 0; fun inc() { i = i + 1; return i; } return inc; }"
+                        + "var c = counter(); print(c()); print(c()); print(c());");
+        assertSameOutput("3\n3\n",
+                "var g = 1; { var x = 2; fun f() { return g + x; } print(f()); print(f()); }");
+        // every evaluation of a lambda shares one profile and the compiled code
+        assertSameOutput("0\n12\n",
+                "fun twice(f, x) { return f(f(x)); }"
+                        + "for (var i = 0; i < 4; i = i + 1) { var n = i; var r = twice(fun(x) { return x + n; }, 0);"
+                        + "  if (i == 0 or i == 3) print(r * 2); }");
+        // methods get `this` passed in and read captured variables from the class closure
+        assertSameOutput("x1\nx1\n",
+                "fun make(p) { class A < Object { get() { return p + this.n; } } return A(); } class Object {}"
+                        + "{ var a = make(\"x\"); a.n = 1; print(a.get()); print(a.get()); }");
+        // a lambda in a method captures `this` of the call
+        assertSameOutput("3\n4\n",
+                "class A { init(n) { this.n = n; } adder() { return fun(x) { return this.n + x; }; } }"
+                        + "var f = A(1).adder(); print(f(2)); print(A(2).adder()(2));");
+    }
+
+    @Test
+    void classes() {
+        assertSameOutput("3\n5\nB.m\nA.m\n",
+                "class Point { init(x, y) { this.x = x; this.y = y; return; } sum() { return this.x + this.y; } }"
+                        + "var p = Point(1, 2); print(p.sum()); print(p.init(2, 3).sum());"
+                        + "class A { m() { return \"A.m\"; } }"
+                        + "class B < A { m() { return \"B.m\"; } sup() { return super.m(); } }"
+                        + "var b = B(); print(b.m()); print(b.sup());");
+    }
+
+    @Test
+    void arities() {
+        // calls with up to four arguments take the specialized entry points, more go through an array
+        assertSameOutput("0\n1\n3\n6\n10\n15\n6\n",
+                "fun f0() { return 0; } fun f1(a) { return a; } fun f2(a, b) { return a + b; }"
+                        + "fun f3(a, b, c) { return a + b + c; } fun f4(a, b, c, d) { return a + b + c + d; }"
+                        + "fun f5(a, b, c, d, e) { return a + b + c + d + e; }"
+                        + "class P { init(a, b, c) { this.s = a + b + c; } }"
+                        + "fun g() { print(f0()); print(f1(1)); print(f2(1, 2)); print(f3(1, 2, 3)); print(f4(1, 2, 3, 4));"
+                        + "  print(f5(1, 2, 3, 4, 5)); print(P(1, 2, 3).s); } g();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 4 arguments, but got 5.\n",
+                "fun f(a, b, c, d) {} fun g() { f(1, 2, 3, 4, 5); } g();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 0 arguments, but got 1.\n",
+                "class A {} fun g() { A(1); } g();");
+    }
+
+    @Test
+    void methodCalls() {
+        // methods are called without a bound method, fields holding functions and class methods are not methods
+        assertSameOutput("3\nf\nA.s\n3\n",
+                "fun f() { return \"f\"; } class A { init() { this.n = 1; } add(a, b) { return this.n + a + b; }"
+                        + "  s() { return \"A.s\"; } }"
+                        + "fun g() { var a = A(); print(a.add(1, 1)); a.f = f; print(a.f()); print(A.s());"
+                        + "  print(a.init().add(1, 1)); } g();");
+        assertSameOutput("[RuntimeError] test.lox:1\tUndefined property 'x'.\n",
+                "class A {} fun g() { A().x(print(\"not evaluated\")); } g();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 1 arguments, but got 0.\n",
+                "class A { m(a) {} } fun g() { A().m(); } g();");
+    }
+
+    @Test
+    void tailCalls() {
+        // deep enough to overflow the stack without tail calls
+        assertSameOutput("1000000\ntrue\n500000\nnative\n",
+                "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }"
+                        + "fun even(n) { if (n == 0) return true; return odd(n - 1); }"
+                        + "fun odd(n) { if (n == 0) return false; return even(n - 1); }"
+                        + "class Loop { init(n) { this.n = n; } run(acc) { if (this.n == 0) return acc;"
+                        + "  this.n = this.n - 1; return this.run(acc + 1); } }"
+                        + "fun last() { return print(\"native\"); }"
+                        + "print(count(1000000, 0)); print(even(100000)); print(Loop(500000).run(0)); last();");
+    }
+
+    @Test
+    void runtimeErrors() {
+        assertSameOutput("1\n[RuntimeError] test.lox:1\tOperands must be numbers.\n",
+                "fun f(a) { return a - 1; }\nprint(f(2)); print(f(\"a\"));");
+        assertSameOutput("[RuntimeError] test.lox:1\tUndefined variable 'y'.\n", "fun f() { y = 1; } f();");
+        assertSameOutput("[RuntimeError] test.lox:1\tOnly instances have fields.\n",
+                "fun f() { 1.x = print(\"not evaluated\"); } f();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 1 arguments, but got 0.\n",
+                "fun f(a) {} fun g() { f(); } g();");
+    }
+
+    private WeakReference<Class<?>> compile(String source) {
+        List<Stmt> stmts = new Parser(new Lexer(source, "test.lox")).parse();
+        new ResolverPass().resolve(stmts);
+        Jit jit = new Jit(1);
+        new Interpreter(jit).interpret(stmts);
+        CompiledFunction code = jit.profile((Stmt.Function) stmts.get(0)).compiled();
+        assertNotNull(code);
+        return new WeakReference<>(code.getClass());
+    }
+
+    @Test
+    void unloading() {
+        // a compiled class must not outlive the program it was compiled from
+        WeakReference<Class<?>> compiled = compile("fun f(a) { return a + 1; } f(1);");
+        for (int i = 0; i < 10 && compiled.get() != null; i++)
+            System.gc();
+        assertNull(compiled.get(), "compiled class is still reachable");
+    }
+}
@@ -0,0 +1,97 @@
+package at.lagerfeuer.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static at.lagerfeuer.lox.TokenType.EOF;
+
+/**
+ * Lexes a generated script of the given size and prints the number of tokens, the elapsed time, the bytes allocated and
+ * the peak heap usage.
+ * <p>
+ * Usage: {@code LexerBenchmark string|reader|mapped [size in MB, default 500]}, see {@code bench-lexer.sh}.
+ * <ul>
+ *     <li>{@code string}: read the whole file into a String first, like {@code Lox} used to</li>
+ *     <li>{@code reader}: stream chars from a buffered reader</li>
+ *     <li>{@code mapped}: lex the bytes of the memory-mapped file</li>
+ * </ul>
+ */
+public class LexerBenchmark {
+    public static void main(String[] args) throws IOException {
+        String mode = args[0];
+        long size = ((args.length > 1) ? Long.parseLong(args[1]) : 500) << 20;
+        Path path = Paths.get("target", String.format("lexer-bench-%dmb.lox", size >> 20));
+        if (!Files.exists(path) || Files.size(path) < size)
+            generate(path, size);
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            pool.resetPeakUsage();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long tokens;
+        switch (mode) {
+            case "string":
+                tokens = lex(new Lexer(Files.readString(path, StandardCharsets.UTF_8), "bench.lox"));
+                break;
+            case "reader":
+                try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    tokens = lex(new Lexer(reader, "bench.lox"));
+                }
+                break;
+            case "mapped":
+                try (FileChannel channel = FileChannel.open(path)) {
+                    tokens = lex(new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                            StandardCharsets.UTF_8, "bench.lox"));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("%s\t%d MB\t%d tokens\t%.2f s\t%d MB allocated\t%d MB peak heap%n",
+                mode, Files.size(path) >> 20, tokens, seconds, allocated >> 20, peak >> 20);
+    }
+
+    private static long lex(Lexer lexer) {
+        long tokens = 0;
+        // NOTE tokens are read the way the parser does, without creating Token objects
+        while (lexer.type(lexer.scan()) != EOF)
+            tokens++;
+        return tokens;
+    }
+
+    private static void generate(Path path, long size) throws IOException {
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            long written = 0;
+            for (int i = 0; written < size; i++) {
+                String chunk = String.format("// function number %d%n"
+                        + "fun f%d(a, b) {%n"
+                        + "    var s = \"string %d\";%n"
+                        + "    /* sum of a and b */%n"
+                        + "    if (a <= b and b != nil) return a + b * %d.5;%n"
+                        + "    return s;%n"
+                        + "}%n", i, i, i, i);
+                writer.write(chunk);
+                written += chunk.length();
+            }
+        }
+    }
+}
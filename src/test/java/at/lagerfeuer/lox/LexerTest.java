@@ -2,6 +2,14 @@ package at.lagerfeuer.lox;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -111,4 +119,108 @@ class LexerTest {
         TokenType[] types = lex(source);
         assertArrayEquals(ref, types);
     }
-}
\ No newline at end of file
+
+    @Test
+    void unterminated_comment() {
+        String source = "abc /* comment";
+        TokenType[] ref = {IDENTIFIER, EOF};
+        TokenType[] types = lex(source);
+        assertArrayEquals(ref, types);
+    }
+
+    @Test
+    void trailing_whitespace() {
+        String source = "abc \t\r\n  \n";
+        TokenType[] ref = {IDENTIFIER, EOF};
+        assertArrayEquals(ref, lex(source));
+        assertEquals(3, new Lexer(source).scanTokens().get(1).line);
+    }
+
+    @Test
+    void almost_keywords() {
+        String source = "fo fora f nils an o brea breaks classy t thi thisx s st sup superb staticx"
+                + " i iff e els r returns w whil";
+        for (TokenType type : lex(source)) {
+            if (type != EOF)
+                assertEquals(IDENTIFIER, type);
+        }
+    }
+
+    @Test
+    void numbers() {
+        String[] numbers = {
+                "0", "7", "0.1", "0.5", "123.456", "3.1415926535", "4503599627370496", "9007199254740993",
+                "12345678901234567890", "1.0000000000000002", "0.30000000000000004", "1234567.0000000001"
+        };
+        for (String number : numbers) {
+            Object literal = new Lexer(number).scanTokens().get(0).literal;
+            assertEquals(Double.parseDouble(number), (double) literal, number);
+        }
+    }
+
+    @Test
+    void nextToken() {
+        Lexer lexer = new Lexer("a b");
+        assertEquals(new Token(IDENTIFIER, "a", null), lexer.nextToken());
+        assertEquals(new Token(IDENTIFIER, "b", null), lexer.nextToken());
+        assertEquals(EOF, lexer.nextToken().type);
+        assertEquals(EOF, lexer.nextToken().type);
+    }
+
+    @Test
+    void streaming() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            builder.append("var v").append(i).append(" = \"s\n").append(i).append("\" + 3.25; // ")
+                    .append(i).append("\n/* ").append(i).append(" */ ");
+        String source = builder.toString();
+        List<Token> ref = new Lexer(source).scanTokens();
+
+        // one char per read, every token crosses a chunk boundary
+        Reader reader = new Reader() {
+            private final Reader source = new StringReader(builder.toString());
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return source.read(buffer, offset, Math.min(length, 1));
+            }
+
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+        };
+        List<Token> tokens = new Lexer(reader, "<stdin>").scanTokens();
+        assertEquals(ref, tokens);
+        for (int i = 0; i < ref.size(); i++)
+            assertEquals(ref.get(i).line, tokens.get(i).line);
+
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        Lexer lexer = new Lexer(Channels.newChannel(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8, "<stdin>");
+        assertEquals(ref, lexer.scanTokens());
+    }
+
+    @Test
+    void bytes() {
+        String source = "var s = \"süß → λ\";\n/* ünïcödé */ print(s + 1.5); // ✓\nstatic";
+        List<Token> ref = new Lexer(source).scanTokens();
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1}) {
+            String encodable = charset.newEncoder().canEncode(source) ? source : source.replaceAll("[^\\x00-\\xff]", "?");
+            ByteBuffer bytes = ByteBuffer.wrap(encodable.getBytes(charset));
+            List<Token> tokens = new Lexer(bytes, charset, "<stdin>").scanTokens();
+            assertEquals(new Lexer(encodable).scanTokens(), tokens);
+            assertEquals(3, tokens.get(tokens.size() - 1).line);
+        }
+        assertEquals("süß → λ", ref.get(3).literal);
+        assertThrows(IllegalArgumentException.class,
+                () -> new Lexer(ByteBuffer.allocate(0), StandardCharsets.UTF_16, "<stdin>"));
+    }
+
+    @Test
+    void unexpected_bytes() {
+        ByteBuffer bytes = ByteBuffer.wrap("a λ b".getBytes(StandardCharsets.UTF_8));
+        List<Token> tokens = new Lexer(bytes, StandardCharsets.UTF_8, "<stdin>").scanTokens();
+        TokenType[] types = tokens.stream().map(token -> token.type).toArray(TokenType[]::new);
+        assertArrayEquals(new TokenType[]{IDENTIFIER, IDENTIFIER, EOF}, types);
+    }
+}
@@ -0,0 +1,68 @@
+package at.lagerfeuer.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static at.lagerfeuer.lox.TokenType.EOF;
+
+/**
+ * JMH benchmark of the lexer throughput in MB of source per second, reported as the `megabytes` counter.
+ * <p>
+ * Lexes about 4 MB of generated Lox code from a String and from UTF-8 bytes, the way the {@link Parser} reads tokens.
+ * Run with {@code ./bench-jmh.sh LexerThroughput}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerThroughput {
+    private String source;
+    private byte[] bytes;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public double megabytes;
+    }
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < (4 << 20); i++) {
+            builder.append(String.format("// function number %d%n"
+                    + "fun function%d(first, second) {%n"
+                    + "    var text = \"string %d\";%n"
+                    + "    /* sum of first and second */%n"
+                    + "    if (first <= second and second != nil) return first + second * %d.25;%n"
+                    + "    while (false) { this.field = super.method(1, 2.5, \"three\"); }%n"
+                    + "    return text;%n"
+                    + "}%n", i, i % 1000, i, i));
+        }
+        source = builder.toString();
+        bytes = source.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lex(Lexer lexer) {
+        int tokens = 0;
+        while (lexer.type(lexer.scan()) != EOF)
+            tokens++;
+        return tokens;
+    }
+
+    @Benchmark
+    public int chars(Counters counters) {
+        counters.megabytes += source.length() / (double) (1 << 20);
+        return lex(new Lexer(source, "bench.lox"));
+    }
+
+    @Benchmark
+    public int bytes(Counters counters) {
+        counters.megabytes += bytes.length / (double) (1 << 20);
+        return lex(new Lexer(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, "bench.lox"));
+    }
+}
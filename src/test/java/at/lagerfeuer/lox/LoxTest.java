@@ -0,0 +1,75 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.jit.Jit;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A long-running session runs many programs on one engine, what each of them leaves behind must be bounded.
+ */
+class LoxTest {
+    // NOTE `add` is called often enough to be compiled by the JIT of the default engine
+    private static final String PROGRAM = String.format("var total = 0; fun add(a, b) { return a + b; }"
+            + "for (var i = 0; i < %d; i = i + 1) { var local = 2; total = add(total, local); } print(total);",
+            Jit.DEFAULT_THRESHOLD + 1);
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    void sessionHeapIsFlat() {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+            // errors of earlier runs in the session do not stop the later ones
+            Lox.run("var;", "session.lox");
+            Lox.run("nil + 1;", "session.lox");
+            for (int i = 0; i < 10_000; i++)
+                Lox.run(PROGRAM, "session.lox");
+            ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+            long loaded = classes.getTotalLoadedClassCount();
+            long before = usedHeap();
+            for (int i = 0; i < 100_000; i++)
+                Lox.run(PROGRAM, "session.lox");
+            long growth = usedHeap() - before;
+            assertTrue(growth < 8 << 20, String.format("heap grew by %d bytes", growth));
+            // every run compiled its own `add`
+            assertTrue(classes.getTotalLoadedClassCount() - loaded >= 100_000);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    @Test
+    void globalIndicesAreBounded() {
+        // global indices are never released, but a name that has been seen before does not take another one
+        PrintStream stdout = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Lox.run(PROGRAM, "session.lox");
+            Lox.run("var globalIndicesAreBounded = 1;", "session.lox");
+            int count = Globals.count();
+            for (int i = 0; i < 1000; i++) {
+                Lox.run(PROGRAM, "session.lox");
+                Lox.run("var globalIndicesAreBounded = 1;", "session.lox");
+            }
+            assertEquals(count, Globals.count());
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+}
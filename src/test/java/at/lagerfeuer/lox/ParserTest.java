@@ -4,6 +4,7 @@ import at.lagerfeuer.lox.ast.Expr;
 import at.lagerfeuer.lox.ast.Stmt;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -11,7 +12,7 @@ import static org.junit.jupiter.api.Assertions.*;
 class ParserTest {
     private List<Stmt> parse(String input) {
         Lexer lexer = new Lexer(input);
-        Parser parser = new Parser(lexer.scanTokens());
+        Parser parser = new Parser(lexer);
         return parser.parse();
     }
 
@@ -200,4 +201,34 @@ class ParserTest {
         Expr expr = parseExpr(input);
         assertNull(expr);
     }
-}
\ No newline at end of file
+
+    @Test
+    void streaming() {
+        // several chunks of the lexer, tokens are created after the window moved on
+        StringBuilder source = new StringBuilder();
+        int n = 1000;
+        for (int i = 0; i < n; i++)
+            source.append(String.format("var v%d = \"s%d\";%nfun (x) { return x; }(%d);%nv%d.f = %d.5;%n", i, i, i, i, i));
+        List<Stmt> stmts = new Parser(new Lexer(new StringReader(source.toString()), "test.lox")).parse();
+        assertEquals(3 * n, stmts.size());
+        for (int i = 0; i < n; i++) {
+            Stmt.Var var = (Stmt.Var) stmts.get(3 * i);
+            assertEquals("v" + i, var.name.lexeme);
+            assertEquals(3 * i + 1, var.name.line);
+            assertEquals("test.lox", var.name.filename);
+            assertLiteral(var.initializer, "s" + i);
+
+            Expr.Call call = (Expr.Call) ((Stmt.Expression) stmts.get(3 * i + 1)).expr;
+            Expr.Lambda lambda = (Expr.Lambda) call.callee;
+            assertEquals("x", lambda.parameters.get(0).lexeme);
+            assertEquals(TokenType.FUN, lambda.token.type);
+            assertEquals(TokenType.RPAREN, call.paren.type);
+            assertLiteral(call.arguments.get(0), i);
+
+            Expr.Set set = (Expr.Set) ((Stmt.Expression) stmts.get(3 * i + 2)).expr;
+            assertEquals("v" + i, ((Expr.Variable) set.object).name.lexeme);
+            assertEquals("f", set.name.lexeme);
+            assertLiteral(set.value, i + 0.5);
+        }
+    }
+}
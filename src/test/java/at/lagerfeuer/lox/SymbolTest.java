@@ -0,0 +1,68 @@
+package at.lagerfeuer.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTest {
+
+    @Test
+    void intern() {
+        Symbol symbol = Symbol.intern("symbolTestName");
+        assertSame(symbol, Symbol.intern(new String("symbolTestName".toCharArray())));
+        assertSame(symbol, Symbol.intern("a symbolTestName b".toCharArray(), 2, 16));
+        assertSame(symbol, Symbol.intern("a symbolTestName b".getBytes(StandardCharsets.US_ASCII), 2, 16));
+        assertEquals("symbolTestName", symbol.name);
+        assertEquals(TokenType.IDENTIFIER, symbol.type);
+        assertNotSame(symbol, Symbol.intern("symbolTestNam"));
+        assertNotEquals(symbol.id, Symbol.intern("symbolTestNam").id);
+    }
+
+    @Test
+    void keywords() {
+        assertEquals(TokenType.WHILE, Symbol.intern("while").type);
+        assertEquals(TokenType.THIS, Symbol.THIS.type);
+        assertEquals(TokenType.IDENTIFIER, Symbol.INIT.type);
+        assertSame(Symbol.SUPER, Symbol.intern("super"));
+    }
+
+    @Test
+    void tokens() {
+        List<Token> tokens = new Lexer("foo this.foo fun foo").scanTokens();
+        assertSame(tokens.get(0).symbol, tokens.get(3).symbol);
+        assertSame(tokens.get(0).lexeme, tokens.get(5).lexeme);
+        assertSame(Symbol.THIS, tokens.get(1).symbol);
+        assertEquals(TokenType.FUN, tokens.get(4).symbol.type);
+        assertNull(tokens.get(2).symbol);
+        assertSame(tokens.get(0).symbol, new Token(TokenType.IDENTIFIER, "foo", null).symbol);
+    }
+
+    @Test
+    void concurrent() throws Exception {
+        int n = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Symbol[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    Symbol[] symbols = new Symbol[n];
+                    for (int i = 0; i < n; i++)
+                        symbols[i] = Symbol.intern("concurrent" + i);
+                    return symbols;
+                }));
+            }
+            Symbol[] ref = futures.get(0).get();
+            for (Future<Symbol[]> future : futures)
+                assertArrayEquals(ref, future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package at.lagerfeuer.lox;
+
+import at.lagerfeuer.lox.ast.Stmt;
+import at.lagerfeuer.lox.nodes.NodeInterpreter;
+import at.lagerfeuer.lox.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The VM and the node interpreter have to behave exactly like the tree-walking interpreter.
+ */
+class VMTest {
+    /**
+     * Run a whole program and return everything it printed to stdout and stderr.
+     */
+    private String run(String source, Engine engine) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            PrintStream capture = new PrintStream(out, true);
+            System.setOut(capture);
+            System.setErr(capture);
+            List<Stmt> stmts = new Parser(new Lexer(source, "test.lox")).parse();
+            new ResolverPass().resolve(stmts);
+            engine.interpret(stmts);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private void assertSameOutput(String expected, String source) {
+        assertEquals(expected, run(source, new Interpreter()));
+        assertEquals(expected, run(source, new VM()));
+        assertEquals(expected, run(source, new NodeInterpreter()));
+    }
+
+    @Test
+    void expressions() {
+        assertSameOutput("7\n3\n-1\nab\na1\n1b\ntrue\nfalse\n",
+                "print(1 + 2 * 3); print((1 + 2) * 4 / 4); print(-1);"
+                        + "print(\"a\" + \"b\"); print(\"a\" + 1); print(1 + \"b\");"
+                        + "print(1 < 2 == true); print(!\"\" == !0 != true);");
+        assertSameOutput("2\nyes\nnil\n",
+                "print(nil or 2); print(0.5 ? \"no\" : \"yes\"); print(nil and 1);");
+    }
+
+    @Test
+    void variables() {
+        assertSameOutput("3\ninner\nouter\n1\n",
+                "var a = 1; a = a + 2; print(a);"
+                        + "var b = \"outer\"; { var b = \"inner\"; print(b); } print(b);"
+                        + "{ var c = 0; { var d = 1; c = d; } print(c); }");
+    }
+
+    @Test
+    void controlFlow() {
+        assertSameOutput("10\n3\nelse\n",
+                "var sum = 0; for (var i = 0; i < 100; i = i + 1) { var j = i; if (j == 5) break; sum = sum + j; }"
+                        + "print(sum);"
+                        + "var k = 0; while (true) { k = k + 1; if (k > 2) { var x = k; break; } } print(k);"
+                        + "if (nil) print(\"then\"); else print(\"else\");");
+    }
+
+    @Test
+    void functions() {
+        assertSameOutput("55\n<function fib :: >\n<anonymous function>\n<native function>\n3\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }"
+                        + "print(fib(10)); print(fib); print(fun() {}); print(print);"
+                        + "fun add(a, b) { return a + b; } var f = add; print(f(1, 2));");
+    }
+
+    @Test
+    void closures() {
+        assertSameOutput("1\n2\n1\n0\n1\n2\nshared\n",
+                "fun counter() { var i = 0; return fun() { i = i + 1; return i; }; }"
+                        + "var a = counter(); var b = counter(); print(a()); print(a()); print(b());"
+                        + "var fs = nil; var gs = nil; var hs = nil;"
+                        + "for (var i = 0; i < 3; i = i + 1) { var j = i; fun get() { return j; }"
+                        + "  if (j == 0) fs = get;"
+                        + "  if (j == 1) gs = get;"
+                        + "  if (j == 2) { hs = get; break; } }"
+                        + "print(fs()); print(gs()); print(hs());"
+                        + "{ var s = \"local\"; fun set() { s = \"shared\"; } fun get() { return s; } set(); print(get()); }");
+    }
+
+    @Test
+    void classes() {
+        assertSameOutput("3\nPoint instance\nPoint\n<function sum :: >\n5\nB.m\nA.m\nA.n\n",
+                "class Point { init(x, y) { this.x = x; this.y = y; } sum() { return this.x + this.y; } }"
+                        + "var p = Point(1, 2); print(p.sum()); print(p); print(Point); print(p.sum);"
+                        + "print(p.init(2, 3).sum());"
+                        + "class A { m() { return \"A.m\"; } n() { return \"A.n\"; } }"
+                        + "class B < A { m() { return \"B.m\"; } sup() { return super.m(); } }"
+                        + "var b = B(); print(b.m()); print(b.sup()); print(b.n());");
+        assertSameOutput("1\n2\n",
+                "{ class Counter { init() { this.n = 0; } inc() { this.n = this.n + 1; return this.n; } }"
+                        + "  var c = Counter(); var inc = c.inc; print(inc()); print(c.inc()); }");
+    }
+
+    @Test
+    void inheritanceChain() {
+        // methods, initializers and super calls are found across the whole chain, not just one level
+        assertSameOutput("A.m\nB.n\nC.n B.n\n3\nA.m\n",
+                "class A { init(x) { this.x = x; } m() { return \"A.m\"; } }"
+                        + "class B < A { n() { return \"B.n\"; } }"
+                        + "class C < B { n() { return \"C.n \" + super.n(); } sup() { return super.m(); } }"
+                        + "var c = C(3); print(c.m()); print(B(1).n()); print(c.n()); print(c.x); print(c.sup());");
+    }
+
+    @Test
+    void stackOverflow() {
+        assertSameOutput("[RuntimeError] test.lox:2\tStack overflow.\n",
+                "fun f(n) {\n return 1 + f(n + 1); }\nf(0);");
+    }
+
+    @Test
+    void deepRecursion() {
+        // the VM keeps its call stack on the heap, the depth is only limited by its maximum
+        String source = "fun depth(n) { if (n == 0) return 0; return 1 + depth(n - 1); } print(depth(300000));";
+        assertEquals("300000\n", run(source, new VM(500000)));
+        assertEquals("[RuntimeError] test.lox:1\tStack overflow.\n", run(source, new VM(1000)));
+        // the script takes the only frame, its first call overflows, a depth of 0 leaves no room for the script
+        assertEquals("1\n[RuntimeError] test.lox:2\tStack overflow.\n", run("print(1);\nfun f() { return 0; } print(f());", new VM(1)));
+        assertEquals("[RuntimeError] test.lox:1\tStack overflow.\n", run("print(1);", new VM(0)));
+        assertEquals("0\n", run("fun f() { return 0; } print(f());", new VM(2)));
+    }
+
+    @Test
+    void operandTypesChange() {
+        // operators of the node interpreter specialize on the first operand types and have to fall back later
+        assertSameOutput("3\nab\na1\ntrue\ntrue\n1.5\n",
+                "fun add(a, b) { return a + b; } fun less(a, b) { return a < b; }"
+                        + "print(add(1, 2)); print(add(\"a\", \"b\")); print(add(\"a\", 1));"
+                        + "print(less(1, 2)); print(less(\"a\", \"b\")); print(add(1, 0.5));");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperands must be numbers or strings.\n",
+                "fun less(a, b) { return a < b; } less(1, 2); less(\"a\", \"b\"); less(1, \"b\");");
+    }
+
+    @Test
+    void runtimeErrors() {
+        assertSameOutput("[RuntimeError] test.lox:1\tOperands must be numbers.\n", "print(1 - \"a\");");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperands must be numbers or strings.\n", "print(1 < \"a\");");
+        assertSameOutput("[RuntimeError] test.lox:1\tExpecting operands to be numbers or strings.\n", "nil + nil;");
+        assertSameOutput("[RuntimeError] test.lox:1\tDivision by 0\n", "1 / 0;");
+        assertSameOutput("[RuntimeError] test.lox:1\tOperand must be a number.\n", "-\"a\";");
+        assertSameOutput("before\n[RuntimeError] test.lox:2\tUndefined variable 'x'.\n", "print(\"before\");\nprint(x);");
+        assertSameOutput("[RuntimeError] test.lox:1\tUndefined variable 'y'.\n", "y = 1;");
+        assertSameOutput("[RuntimeError] test.lox:1\tCan only call functions and classes.\n", "\"f\"();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 1 arguments, but got 0.\n", "fun f(a) {} f();");
+        assertSameOutput("[RuntimeError] test.lox:1\tFunction expects 0 arguments, but got 1.\n", "class A {} A(1);");
+        assertSameOutput("[RuntimeError] test.lox:1\tOnly instances have properties.\n", "1.x;");
+        assertSameOutput("[RuntimeError] test.lox:1\tOnly instances have fields.\n", "1.x = 2;");
+        assertSameOutput("[RuntimeError] test.lox:1\tUndefined property 'x'.\n", "class A {} A().x;");
+        assertSameOutput("[RuntimeError] test.lox:1\tSuperclass must be a class.\n", "var A = 1; class B < A {}");
+        assertSameOutput("[RuntimeError] test.lox:3\tUndefined property 'm'.\n",
+                "class A {}\nclass B < A {\n m() { return super.m(); } }\nB().m();");
+    }
+}